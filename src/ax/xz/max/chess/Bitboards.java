@@ -0,0 +1,208 @@
+package ax.xz.max.chess;
+
+/**
+ * Helpers for working with bitboards: one bit per square, numbered {@code rank * 8 + file}
+ * (so a1 is bit 0, h1 is bit 7 and h8 is bit 63).
+ * <p>
+ * Also holds the precomputed attack tables for the non-sliding pieces;
+ * see {@link MagicBitboards} for bishops, rooks and queens.
+ * <p>
+ * To visit every square of a bitboard without allocating, use:
+ * <pre><code>
+ * for (long remaining = bitboard; remaining != 0; remaining = Bitboards.withoutFirst(remaining)) {
+ *     int square = Bitboards.firstSquare(remaining);
+ *     ...
+ * }
+ * </code></pre>
+ */
+public final class Bitboards {
+	public static final long FILE_A = 0x0101_0101_0101_0101L;
+	public static final long FILE_H = FILE_A << 7;
+	public static final long RANK_1 = 0xFFL;
+	public static final long RANK_8 = RANK_1 << 56;
+
+	private static final long NOT_FILE_A = ~FILE_A;
+	private static final long NOT_FILE_H = ~FILE_H;
+
+	private static final long[] KNIGHT_ATTACKS = new long[64];
+	private static final long[] KING_ATTACKS = new long[64];
+	private static final long[][] PAWN_ATTACKS = new long[Player.values().length][64];
+
+	private static final long[][] BETWEEN = new long[64][64];
+	private static final long[][] LINE = new long[64][64];
+
+	static {
+		for (int square = 0; square < 64; square++) {
+			long bit = bit(square);
+
+			long knightAttacks = 0;
+			long horizontalOne = east(bit) | west(bit);
+			long horizontalTwo = east(east(bit)) | west(west(bit));
+			knightAttacks |= (horizontalOne << 16) | (horizontalOne >>> 16);
+			knightAttacks |= (horizontalTwo << 8) | (horizontalTwo >>> 8);
+			KNIGHT_ATTACKS[square] = knightAttacks;
+
+			long row = bit | east(bit) | west(bit);
+			KING_ATTACKS[square] = (row | north(row) | south(row)) & ~bit;
+
+			PAWN_ATTACKS[Player.WHITE.ordinal()][square] = northEast(bit) | northWest(bit);
+			PAWN_ATTACKS[Player.BLACK.ordinal()][square] = southEast(bit) | southWest(bit);
+		}
+
+		for (int a = 0; a < 64; a++) {
+			for (int b = 0; b < 64; b++) {
+				if (a == b) continue;
+				long ends = bit(a) | bit(b);
+				if ((MagicBitboards.rookAttacks(a, 0) & bit(b)) != 0) {
+					BETWEEN[a][b] = MagicBitboards.rookAttacks(a, ends) & MagicBitboards.rookAttacks(b, ends);
+					LINE[a][b] = (MagicBitboards.rookAttacks(a, 0) & MagicBitboards.rookAttacks(b, 0)) | ends;
+				} else if ((MagicBitboards.bishopAttacks(a, 0) & bit(b)) != 0) {
+					BETWEEN[a][b] = MagicBitboards.bishopAttacks(a, ends) & MagicBitboards.bishopAttacks(b, ends);
+					LINE[a][b] = (MagicBitboards.bishopAttacks(a, 0) & MagicBitboards.bishopAttacks(b, 0)) | ends;
+				}
+			}
+		}
+	}
+
+	private Bitboards() {}
+
+	public static int square(int rank, int file) {
+		return rank * 8 + file;
+	}
+
+	public static int rankOf(int square) {
+		return square >>> 3;
+	}
+
+	public static int fileOf(int square) {
+		return square & 7;
+	}
+
+	public static long bit(int square) {
+		return 1L << square;
+	}
+
+	public static long rankMask(int rank) {
+		return RANK_1 << (rank * 8);
+	}
+
+	public static long fileMask(int file) {
+		return FILE_A << file;
+	}
+
+	public static long knightAttacks(int square) {
+		return KNIGHT_ATTACKS[square];
+	}
+
+	public static long kingAttacks(int square) {
+		return KING_ATTACKS[square];
+	}
+
+	/**
+	 * @return the squares a pawn owned by the input player attacks diagonally from the input square
+	 */
+	public static long pawnAttacks(Player player, int square) {
+		return PAWN_ATTACKS[player.ordinal()][square];
+	}
+
+	/**
+	 * @return the squares attacked by every pawn in the bitboard, owned by the input player
+	 */
+	public static long pawnAttacks(Player player, long pawns) {
+		return switch (player) {
+			case WHITE -> northEast(pawns) | northWest(pawns);
+			case BLACK -> southEast(pawns) | southWest(pawns);
+		};
+	}
+
+	/**
+	 * @return the bitboard shifted one rank forward, from the perspective of the input player
+	 */
+	public static long forward(Player player, long bitboard) {
+		return switch (player) {
+			case WHITE -> north(bitboard);
+			case BLACK -> south(bitboard);
+		};
+	}
+
+	/**
+	 * @return the squares strictly between two squares on the same rank, file or diagonal, otherwise empty
+	 */
+	public static long between(int a, int b) {
+		return BETWEEN[a][b];
+	}
+
+	/**
+	 * @return every square of the rank, file or diagonal through both squares, or empty if they are not aligned
+	 */
+	public static long line(int a, int b) {
+		return LINE[a][b];
+	}
+
+	public static long north(long bitboard) {
+		return bitboard << 8;
+	}
+
+	public static long south(long bitboard) {
+		return bitboard >>> 8;
+	}
+
+	public static long east(long bitboard) {
+		return (bitboard & NOT_FILE_H) << 1;
+	}
+
+	public static long west(long bitboard) {
+		return (bitboard & NOT_FILE_A) >>> 1;
+	}
+
+	public static long northEast(long bitboard) {
+		return (bitboard & NOT_FILE_H) << 9;
+	}
+
+	public static long northWest(long bitboard) {
+		return (bitboard & NOT_FILE_A) << 7;
+	}
+
+	public static long southEast(long bitboard) {
+		return (bitboard & NOT_FILE_H) >>> 7;
+	}
+
+	public static long southWest(long bitboard) {
+		return (bitboard & NOT_FILE_A) >>> 9;
+	}
+
+	/** @return every square on or above a set bit, on the same file */
+	public static long northFill(long bitboard) {
+		bitboard |= bitboard << 8;
+		bitboard |= bitboard << 16;
+		bitboard |= bitboard << 32;
+		return bitboard;
+	}
+
+	/** @return every square on or below a set bit, on the same file */
+	public static long southFill(long bitboard) {
+		bitboard |= bitboard >>> 8;
+		bitboard |= bitboard >>> 16;
+		bitboard |= bitboard >>> 32;
+		return bitboard;
+	}
+
+	/** @return every square on a file which contains a set bit */
+	public static long fileFill(long bitboard) {
+		return northFill(bitboard) | southFill(bitboard);
+	}
+
+	/** @return the lowest set square, or 64 if the bitboard is empty */
+	public static int firstSquare(long bitboard) {
+		return Long.numberOfTrailingZeros(bitboard);
+	}
+
+	/** @return the bitboard with its lowest set square cleared */
+	public static long withoutFirst(long bitboard) {
+		return bitboard & (bitboard - 1);
+	}
+
+	public static int count(long bitboard) {
+		return Long.bitCount(bitboard);
+	}
+}
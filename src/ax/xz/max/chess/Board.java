@@ -79,6 +79,11 @@ public class Board {
 		return moves.size(); // number of moves made since construction of object
 	}
 
+	/** @return the moves made on the Board object, oldest first */
+	public List<MoveRecord> getMoves() {
+		return Collections.unmodifiableList(moves);
+	}
+
 	public Player currentTurn() {
 		return boardState().currentTurn();
 	}
@@ -9,6 +9,13 @@ public record BoardCoordinate(
 		int rank,
 		int file
 ) {
+	private static final BoardCoordinate[] SQUARES = new BoardCoordinate[64];
+
+	static {
+		for (int square = 0; square < 64; square++)
+			SQUARES[square] = new BoardCoordinate(square / 8, square % 8);
+	}
+
 	public static BoardCoordinate fromString(String s) { // example: "e4"
 		return new BoardCoordinate(s.charAt(1) - '1', s.charAt(0) - 'a');
 	}
@@ -18,6 +25,16 @@ public record BoardCoordinate(
 		return String.format("%c%c", file + 'a', rank + '1');
 	}
 
+	/** @return the bitboard index of this coordinate */
+	public int square() {
+		return rank * 8 + file;
+	}
+
+	/** @return the shared coordinate instance for a bitboard index */
+	public static BoardCoordinate fromSquare(int square) {
+		return SQUARES[square];
+	}
+
 	public BoardCoordinate step(int rankStep, int fileStep) {
 		return new BoardCoordinate(rank + rankStep, file + fileStep);
 	}
@@ -8,8 +8,6 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static ax.xz.max.chess.PieceType.PAWN;
 
@@ -28,6 +26,7 @@ public class BoardState {
 	private final boolean whiteLongCastle;
 	private final boolean blackShortCastle;
 	private final boolean blackLongCastle;
+	private final long zobristKey;
 
 	private volatile boolean whiteCheck, blackCheck;
 	private volatile boolean whiteCheckComputed, blackCheckComputed;
@@ -53,6 +52,12 @@ public class BoardState {
 		this.whiteLongCastle = whiteLongCastle;
 		this.blackShortCastle = blackShortCastle;
 		this.blackLongCastle = blackLongCastle;
+
+		// the piece placement part of the key is maintained incrementally by BoardStateInternal.set
+		this.zobristKey = board.pieceKey()
+				^ Zobrist.sideToMove(currentTurn)
+				^ Zobrist.castling(whiteShortCastle, whiteLongCastle, blackShortCastle, blackLongCastle)
+				^ Zobrist.enPassant(enPassantTarget);
 	}
 
 	public static BoardState defaultBoard() {
@@ -60,11 +65,11 @@ public class BoardState {
 	}
 
 	public Piece pieceAt(BoardCoordinate coordinate) {
-		return board.get(coordinate.rank(), coordinate.file());
+		return board.get(coordinate.square());
 	}
 
 	public boolean isEmpty(BoardCoordinate coordinate) {
-		return pieceAt(coordinate) == null;
+		return board.isEmpty(coordinate.square());
 	}
 
 	public BoardState placePiece(Piece piece, BoardCoordinate coordinate) {
@@ -256,23 +261,35 @@ public class BoardState {
 		return builder.toString();
 	}
 
+	/**
+	 * @return the Zobrist key of this position, covering the pieces, side to move, castling rights and en passant file
+	 */
+	public long zobristKey() {
+		return zobristKey;
+	}
+
 	@Override
 	public int hashCode() {
-		return Objects.hash(board, currentTurn, whiteShortCastle, whiteLongCastle, blackShortCastle, blackLongCastle);
+		return Long.hashCode(zobristKey);
 	}
 
+	/**
+	 * Two board states are equal if they have the same pieces, side to move, castling rights and en passant target.
+	 * The move clocks are ignored.
+	 */
 	@Override
 	public boolean equals(Object obj) {
-		if (obj instanceof BoardState other) {
-			String thisFEN = this.toFEN();
-			String otherFEN = other.toFEN();
-
-			// compare FENs, but only look at first 3 words
-			String[] thisWords = Arrays.stream(thisFEN.split("\\s+")).limit(3).toArray(String[]::new);
-			String[] otherWords = Arrays.stream(otherFEN.split("\\s+")).limit(3).toArray(String[]::new);
-			return Arrays.deepEquals(thisWords, otherWords);
-		}
-		return false;
+		if (this == obj) return true;
+		if (!(obj instanceof BoardState other)) return false;
+
+		return zobristKey == other.zobristKey
+				&& currentTurn == other.currentTurn
+				&& whiteShortCastle == other.whiteShortCastle
+				&& whiteLongCastle == other.whiteLongCastle
+				&& blackShortCastle == other.blackShortCastle
+				&& blackLongCastle == other.blackLongCastle
+				&& Objects.equals(enPassantTarget, other.enPassantTarget)
+				&& board.equals(other.board); // guards against key collisions
 	}
 
 	/**
@@ -371,188 +388,12 @@ public class BoardState {
 		return new BoardState(realBoard, currentPlayer, enPassantTarget, halfMoves, numMoves, whiteShortCastle, whiteLongCastle, blackShortCastle, blackLongCastle);
 	}
 
-	private static final BoardCoordinate[] DIAGONAL_STEPS = {
-			new BoardCoordinate(1, 1),
-			new BoardCoordinate(1, -1),
-			new BoardCoordinate(-1, 1),
-			new BoardCoordinate(-1, -1)
-	};
-
-	private static final BoardCoordinate[] ORTHOGONAL_STEPS = {
-			new BoardCoordinate(1, 0),
-			new BoardCoordinate(0, 1),
-			new BoardCoordinate(-1, 0),
-			new BoardCoordinate(0, -1)
-	};
-
-	private static final BoardCoordinate[] ALL_STEPS = {
-			new BoardCoordinate(1, 1),
-			new BoardCoordinate(1, 0),
-			new BoardCoordinate(1, -1),
-			new BoardCoordinate(0, 1),
-			new BoardCoordinate(0, -1),
-			new BoardCoordinate(-1, 1),
-			new BoardCoordinate(-1, 0),
-			new BoardCoordinate(-1, -1)
-	};
-
-	private static final BoardCoordinate[] KNIGHT_STEPS = {
-			new BoardCoordinate(2, 1),
-			new BoardCoordinate(2, -1),
-			new BoardCoordinate(-2, 1),
-			new BoardCoordinate(-2, -1),
-			new BoardCoordinate(1, 2),
-			new BoardCoordinate(1, -2),
-			new BoardCoordinate(-1, 2),
-			new BoardCoordinate(-1, -2)
-	};
-
-	private boolean isFriendly(BoardCoordinate position, Player player) {
-		var piece = pieceAt(position);
-		return piece != null && piece.owner() == player;
-	}
-
-	private void attackingSteps(List<BoardCoordinate> destination, BoardCoordinate startPosition, BoardCoordinate step, Player player) {
-		BoardCoordinate current = startPosition.step(step);
-
-		while (current.isValid() && !isFriendly(current, player)) {
-			destination.add(current);
-			if (!isEmpty(current)) break;
-			current = current.step(step);
-		}
-	}
-
-	private Stream<Promotion> promotions(Piece piece, BoardCoordinate position) {
-		if (piece.type() != PAWN)
-			return Stream.empty();
-
-		return Stream.of(1, -1)
-				.map(a -> position.step(piece.owner().pawnDirection(), a))
-				.filter(a -> a.isValid() && a.rank() == piece.owner().opponent().homeRank() && isFriendly(a, piece.owner().opponent())) // contains opponent piece
-				.flatMap(a -> Stream.of(Promotion.allPromotions(piece, position, a)));
-	}
-
-	/**
-	 * Gets the hypothetical moves a piece could make if it were of the input type and at the input position,
-	 * regardless of legality
-	 */
-	private List<BoardCoordinate> attackMoveDestinations(Piece piece, BoardCoordinate position) {
-		return (switch (piece.type()) {
-//			case PAWN -> Stream.of(1, -1).unordered()
-//					.map(a -> position.step(piece.owner().pawnDirection(), a))
-//					.filter(a -> a.isValid() && isFriendly(a, piece.owner().opponent())).toList() // contains opponent piece
-//			;
-			case PAWN -> {
-				if (position.rank() + piece.owner().pawnDirection() == piece.owner().opponent().homeRank())
-					yield List.of();
-
-				var result = new ArrayList<BoardCoordinate>(2);
-				var leftAttackPosition = position.step(piece.owner().pawnDirection(), -1);
-				var rightAttackPosition = position.step(piece.owner().pawnDirection(), 1);
-
-				if (leftAttackPosition.isValid() && isFriendly(leftAttackPosition, piece.owner().opponent())) {
-					result.add(leftAttackPosition);
-				}
-
-				if (rightAttackPosition.isValid() && isFriendly(rightAttackPosition, piece.owner().opponent())) {
-					result.add(rightAttackPosition);
-				}
-
-				yield result;
-			}
-
-//			case KNIGHT -> KNIGHT_STEPS.stream().unordered()
-//					.map(position::step)
-//					.filter(a -> a.isValid() && !isFriendly(a, piece.owner())).toList();
-			case KNIGHT -> {
-				var result = new ArrayList<BoardCoordinate>();
-
-				for (var step : KNIGHT_STEPS) {
-					var destination = position.step(step);
-					if (destination.isValid() && !isFriendly(destination, piece.owner())) {
-						result.add(destination);
-					}
-				}
-
-				yield result;
-			}
-
-//			case KING -> ALL_STEPS.stream().unordered()
-//					.map(position::step)
-//					.filter(a -> a.isValid() && !isFriendly(a, piece.owner())).toList();
-			case KING -> {
-				var result = new ArrayList<BoardCoordinate>();
-
-				for (var step : ALL_STEPS) {
-					var destination = position.step(step);
-					if (destination.isValid() && !isFriendly(destination, piece.owner())) {
-						result.add(destination);
-					}
-				}
-
-				yield result;
-			}
-
-			case BISHOP -> {
-				var result = new ArrayList<BoardCoordinate>();
-
-				for (var step : DIAGONAL_STEPS) {
-					attackingSteps(result, position, step, piece.owner());
-				}
-
-				yield result;
-			}
-
-			case ROOK -> {
-				var result = new ArrayList<BoardCoordinate>();
-
-				for (var step : ORTHOGONAL_STEPS) {
-					attackingSteps(result, position, step, piece.owner());
-				}
-
-				yield result;
-			}
-
-			case QUEEN -> {
-				var result = new ArrayList<BoardCoordinate>();
-
-				for (var step : ALL_STEPS) {
-					attackingSteps(result, position, step, piece.owner());
-				}
-
-				yield result;
-			}
-		});
-	}
-
-	/**
-	 * Gets the hypothetical moves a piece could make from another square to attack the input position,
-	 * regardless of legality
-	 */
-	private Stream<PlayerMove> findAttacksOnCoordinate(Piece piece, BoardCoordinate position) {
-		Piece enemy = new Piece(piece.owner().opponent(), piece.type());
-		return attackMoveDestinations(enemy, position).stream()
-				.filter(a -> piece.equals(pieceAt(a)))
-				.map(a -> new RegularMove(piece, a, position)); // reverse move
-	}
-
 	/**
 	 * Determines whether a given square is defended by the opponent,
 	 * regardless of legality
 	 */
 	private boolean isDefendedBy(Player opponent, BoardCoordinate position) {
-		// strategy: replace the position square with a piece of any type, and see if it attacks an opponent piece of the same type
-		Player player = opponent.opponent();
-		for (PieceType pieceType : PieceType.values()) {
-			var piece = new Piece(player, pieceType);
-			for (var attackCandidate : attackMoveDestinations(piece, position)) {
-				var pieceAt = pieceAt(attackCandidate);
-				if (new Piece(opponent, pieceType).equals(pieceAt(attackCandidate)))
-					return true;
-			}
-		}
-
-		return false;
+		return board.isAttacked(position.square(), opponent);
 	}
 
 	public boolean isInCheck(Player player) {
@@ -603,27 +444,25 @@ public class BoardState {
 
 	private Set<PlayerMove> getLegalMoves0(Player currentPlayer) {
 		Set<PlayerMove> legalMoves = new HashSet<>(unprocessedLegalMoves(currentPlayer));
-		ArrayList<PlayerMove> additionalMoves = new ArrayList<>();
 
+		// canDoCastle already checks every square the king passes through, including the one it lands on
 		Castle shortCastle = Castle.shortCastle(currentPlayer);
 		if (!isInCheck(currentPlayer) && canShortCastle(currentPlayer) && canDoCastle(shortCastle))
-			additionalMoves.add(shortCastle);
+			legalMoves.add(shortCastle);
 
 		Castle longCastle = Castle.longCastle(currentPlayer);
 		if (!isInCheck(currentPlayer) && canLongCastle(currentPlayer) && canDoCastle(longCastle))
-			additionalMoves.add(longCastle);
-
-		// en passant
-		if (enPassantTarget != null) { // todo: check if en passant is legal without recomputing
-			findAttacksOnCoordinate(new Piece(currentPlayer, PAWN), enPassantTarget)
-					.map(PlayerMove::from)
-					.map(from -> EnPassant.enPassant(currentPlayer, from, enPassantTarget))
-					.forEach(additionalMoves::add);
-		}
-
-		for (PlayerMove a : additionalMoves) {
-			if (!a.apply(this).isInCheck(currentPlayer)) {
-				legalMoves.add(a);
+			legalMoves.add(longCastle);
+
+		// en passant: any of our pawns which would attack the target square from behind.
+		// Removing two pawns from one rank can uncover a check which no pin describes, so apply and test.
+		if (enPassantTarget != null) {
+			long capturers = Bitboards.pawnAttacks(currentPlayer.opponent(), enPassantTarget.square()) & board.bitBoardFor(currentPlayer, PAWN);
+			for (; capturers != 0; capturers = Bitboards.withoutFirst(capturers)) {
+				var from = BoardCoordinate.fromSquare(Bitboards.firstSquare(capturers));
+				var enPassant = EnPassant.enPassant(currentPlayer, from, enPassantTarget);
+				if (!enPassant.apply(this).isInCheck(currentPlayer))
+					legalMoves.add(enPassant);
 			}
 		}
 
@@ -671,41 +510,26 @@ public class BoardState {
 	}
 
 	private Set<PlayerMove> unprocessedLegalMoves0(Player currentPlayer) {
-		ArrayList<PlayerMove> legalMoves = new ArrayList<>();
-
-		for (PieceType pieceType : PieceType.values()) {
-			var piece = new Piece(currentPlayer, pieceType);
-
-			for (BoardCoordinate location : board.allOf(piece)) {
-//				regularMoveDestinations(piece, location).map(coord -> new RegularMove(piece, location, coord)).forEach(legalMoves::add);
-				for (var destination : attackMoveDestinations(piece, location)) {
-					legalMoves.add(new RegularMove(piece, location, destination));
-				}
-				promotions(piece, location).forEach(legalMoves::add);
-			}
-		}
-
-		// pawn pushes
-		var pawn = new Piece(currentPlayer, PAWN);
-		for (BoardCoordinate position : board.allOf(pawn)) {
-			BoardCoordinate singleStepFrom = position.step(currentPlayer.pawnDirection(), 0);
-			if (isEmpty(singleStepFrom)) {
-				if (singleStepFrom.rank() == currentPlayer.opponent().homeRank()) {
-					legalMoves.addAll(Set.of(Promotion.allPromotions(pawn, position, singleStepFrom)));
-				} else {
-					legalMoves.add(new RegularMove(pawn, position, singleStepFrom));
+		// castling and en passant depend on more than the board, so they are added after the cache
+		var moves = new MoveList();
+		MoveGenerator.generateLegalMoves(board, currentPlayer, 0, -1, moves);
 
-					BoardCoordinate doubleStepFrom = singleStepFrom.step(currentPlayer.pawnDirection(), 0);
-					if (position.rank() == currentPlayer.pawnRank() && isEmpty(doubleStepFrom)) {
-						legalMoves.add(new RegularMove(pawn, position, doubleStepFrom));
-					}
-				}
-			}
-		}
+		var legalMoves = new PlayerMove[moves.size()];
+		for (int i = 0; i < legalMoves.length; i++)
+			legalMoves[i] = MoveGenerator.toPlayerMove(board, moves.get(i));
+		return Set.of(legalMoves);
+	}
 
-		return legalMoves.stream()
-				.filter(a -> !a.apply(this).isInCheck(currentPlayer))
-				.collect(Collectors.toUnmodifiableSet());
+	/**
+	 * Static exchange evaluation: plays out the captures and recaptures the move starts on its destination square,
+	 * each side using its least valuable attacker, including sliders behind other attackers, and stopping when going on would lose.
+	 * Nothing is moved.
+	 *
+	 * @param move a legal move in this position
+	 * @return the material the move wins in centipawns, once the exchange is over; negative if it loses material
+	 */
+	public int see(PlayerMove move) {
+		return StaticExchange.see(board, Move.of(move));
 	}
 
 	public PlayerMove fromUCI(String text) {
@@ -863,6 +687,10 @@ public class BoardState {
 		return currentTurn;
 	}
 
+	public BoardCoordinate enPassantTarget() {
+		return enPassantTarget;
+	}
+
 	public int halfMoveClock() {
 		return halfMoveClock;
 	}
@@ -6,8 +6,17 @@ import java.util.stream.Stream;
 
 public class BoardStateInternal {
 	private static final Piece[] PIECES;
+	private static final int NUM_TYPES = PieceType.values().length;
 	private final long[] state;
 
+	/**
+	 * Redundant copy of the bitboards, indexed by square.
+	 * Holds {@code indexOf(piece) + 1}, or zero for an empty square.
+	 */
+	private final byte[] mailbox;
+	private final long[] occupancy; // indexed by Player ordinal
+	private long pieceKey; // Zobrist key of the piece placement, kept up to date by set()
+
 	static {
 		var piecesWhite = Arrays.stream(PieceType.values()).map(type -> new Piece(Player.WHITE, type));
 		var piecesBlack = Arrays.stream(PieceType.values()).map(type -> new Piece(Player.BLACK, type));
@@ -24,46 +33,128 @@ public class BoardStateInternal {
 			throw new IllegalArgumentException("BoardStateInternal must have the same number of pieces as PIECES");
 		}
 		this.state = state;
+		this.mailbox = new byte[64];
+		this.occupancy = new long[Player.values().length];
+
+		for (int i = 0; i < PIECES.length; i++) {
+			occupancy[PIECES[i].owner().ordinal()] |= state[i];
+			for (long remaining = state[i]; remaining != 0; remaining = Bitboards.withoutFirst(remaining)) {
+				int square = Bitboards.firstSquare(remaining);
+				mailbox[square] = (byte) (i + 1);
+				pieceKey ^= Zobrist.piece(i, square);
+			}
+		}
+	}
+
+	private BoardStateInternal(long[] state, byte[] mailbox, long[] occupancy, long pieceKey) {
+		this.state = state;
+		this.mailbox = mailbox;
+		this.occupancy = occupancy;
+		this.pieceKey = pieceKey;
+	}
+
+	/** @return the Zobrist key of the piece placement alone, see {@link Zobrist} */
+	public long pieceKey() {
+		return pieceKey;
 	}
 
-	private long allBitBoard() {
-		return Arrays.stream(state).reduce(0L, (a, b) -> a | b);
+	/** @return a bitboard of every occupied square */
+	public long occupancy() {
+		return occupancy[0] | occupancy[1];
 	}
 
-	private static boolean bitAt(long l, int rank, int file) {
-		return (l & (1L << ((rank << 3L) + file))) != 0L;
+	/** @return a bitboard of every square occupied by the player's pieces */
+	public long occupancy(Player player) {
+		return occupancy[player.ordinal()];
 	}
 
 	public int numPieces() {
-		return (int) Arrays.stream(state).map(Long::bitCount).sum();
+		return Long.bitCount(occupancy());
 	}
 
 	public int numExpensivePieces() {
-		return (int) Stream.of(PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP, PieceType.KNIGHT)
-				.flatMap(piece -> Stream.of(Player.WHITE, Player.BLACK).map(player -> new Piece(player, piece)))
-				.mapToLong(this::bitBoardFor)
-				.map(Long::bitCount)
-				.sum();
+		long pawnsAndKings = bitBoardFor(Player.WHITE, PieceType.PAWN) | bitBoardFor(Player.BLACK, PieceType.PAWN)
+				| bitBoardFor(Player.WHITE, PieceType.KING) | bitBoardFor(Player.BLACK, PieceType.KING);
+		return Long.bitCount(occupancy() & ~pawnsAndKings);
 	}
 
 	public Piece get(int rank, int file) {
-		for (int i = 0; i < PIECES.length; i++) {
-			if (bitAt(state[i], rank, file)) {
-				return PIECES[i];
-			}
-		}
+		return get(rank * 8 + file);
+	}
+
+	public Piece get(int square) {
+		int index = mailbox[square];
+		return index == 0 ? null : PIECES[index - 1];
+	}
 
-		return null;
+	public boolean isEmpty(int square) {
+		return mailbox[square] == 0;
 	}
 
 	void set(Piece piece, int rank, int file) {
-		for (int i = 0; i < PIECES.length; i++) {
-			if (PIECES[i].equals(piece)) {
-				state[i] |= (1L << (rank * 8 + file));
-			} else {
-				state[i] &= ~(1L << (rank * 8 + file));
-			}
+		set(piece, rank * 8 + file);
+	}
+
+	void set(Piece piece, int square) {
+		set(indexOf(piece), square);
+	}
+
+	/**
+	 * @param index the index of the piece to place, as given by {@link #indexOf(Piece)}, or -1 to empty the square
+	 */
+	void set(int index, int square) {
+		long bit = 1L << square;
+
+		int previous = mailbox[square];
+		if (previous != 0) {
+			state[previous - 1] &= ~bit;
+			occupancy[(previous - 1) / NUM_TYPES] &= ~bit;
+			pieceKey ^= Zobrist.piece(previous - 1, square);
 		}
+
+		if (index != -1) {
+			state[index] |= bit;
+			occupancy[index / NUM_TYPES] |= bit;
+			pieceKey ^= Zobrist.piece(index, square);
+		}
+		mailbox[square] = (byte) (index + 1);
+	}
+
+	/** @return the index of the piece on the square, as given by {@link #indexOf(Piece)}, or -1 if it is empty */
+	public int indexAt(int square) {
+		return mailbox[square] - 1;
+	}
+
+	/**
+	 * Determines whether a square is attacked by any of the attacker's pieces,
+	 * regardless of legality
+	 */
+	public boolean isAttacked(int square, Player attacker) {
+		// strategy: place each piece type on the square, and see if it attacks an attacker piece of the same type
+		long occupancy = occupancy();
+		long queens = bitBoardFor(attacker, PieceType.QUEEN);
+		return (Bitboards.pawnAttacks(attacker.opponent(), square) & bitBoardFor(attacker, PieceType.PAWN)) != 0
+				|| (Bitboards.knightAttacks(square) & bitBoardFor(attacker, PieceType.KNIGHT)) != 0
+				|| (Bitboards.kingAttacks(square) & bitBoardFor(attacker, PieceType.KING)) != 0
+				|| (MagicBitboards.bishopAttacks(square, occupancy) & (bitBoardFor(attacker, PieceType.BISHOP) | queens)) != 0
+				|| (MagicBitboards.rookAttacks(square, occupancy) & (bitBoardFor(attacker, PieceType.ROOK) | queens)) != 0;
+	}
+
+	/**
+	 * @param occupancy the occupied squares to use for sliding attacks, which may differ from the board's own
+	 * @return a bitboard of the attacker's pieces which attack the square
+	 */
+	public long attackersTo(int square, Player attacker, long occupancy) {
+		long queens = bitBoardFor(attacker, PieceType.QUEEN);
+		return (Bitboards.pawnAttacks(attacker.opponent(), square) & bitBoardFor(attacker, PieceType.PAWN))
+				| (Bitboards.knightAttacks(square) & bitBoardFor(attacker, PieceType.KNIGHT))
+				| (Bitboards.kingAttacks(square) & bitBoardFor(attacker, PieceType.KING))
+				| (MagicBitboards.bishopAttacks(square, occupancy) & (bitBoardFor(attacker, PieceType.BISHOP) | queens))
+				| (MagicBitboards.rookAttacks(square, occupancy) & (bitBoardFor(attacker, PieceType.ROOK) | queens));
+	}
+
+	public int kingSquare(Player player) {
+		return Bitboards.firstSquare(bitBoardFor(player, PieceType.KING));
 	}
 
 	public Piece[] getRank(int rank) {
@@ -81,6 +172,10 @@ public class BoardStateInternal {
 		return state[index];
 	}
 
+	public long bitBoardFor(Player player, PieceType type) {
+		return state[player.ordinal() * NUM_TYPES + type.ordinal()];
+	}
+
 	public Iterable<Iterable<Piece>> ranksReversed() {
 		return () -> new Iterator<>() {
 			private int rank = 7;
@@ -98,11 +193,18 @@ public class BoardStateInternal {
 	}
 
 	public static int indexOf(Piece piece) {
-		for (int i = 0; i < PIECES.length; i++) {
-			if (PIECES[i].equals(piece))
-				return i;
-		}
-		return -1;
+		if (piece == null)
+			return -1;
+		return indexOf(piece.owner(), piece.type());
+	}
+
+	public static int indexOf(Player owner, PieceType type) {
+		return owner.ordinal() * NUM_TYPES + type.ordinal();
+	}
+
+	/** @return the piece with the input index, or null for -1 */
+	public static Piece pieceOf(int index) {
+		return index == -1 ? null : PIECES[index];
 	}
 
 	public Iterable<BoardCoordinate> allOf(Piece piece) {
@@ -119,16 +221,16 @@ public class BoardStateInternal {
 
 			@Override
 			public BoardCoordinate next() {
-				int location = Long.numberOfTrailingZeros(remaining);
-				remaining &= ~(1L << location);
-				return new BoardCoordinate(location / 8, location % 8);
+				int location = Bitboards.firstSquare(remaining);
+				remaining = Bitboards.withoutFirst(remaining);
+				return BoardCoordinate.fromSquare(location);
 			}
 		};
 	}
 
 	public Iterable<BoardCoordinate> allPieces() {
 		return () -> new Iterator<>() {
-			private long remaining = allBitBoard();
+			private long remaining = occupancy();
 
 			@Override
 			public boolean hasNext() {
@@ -137,9 +239,9 @@ public class BoardStateInternal {
 
 			@Override
 			public BoardCoordinate next() {
-				int location = Long.numberOfTrailingZeros(remaining);
-				remaining &= ~(1L << location);
-				return new BoardCoordinate(location / 8, location % 8);
+				int location = Bitboards.firstSquare(remaining);
+				remaining = Bitboards.withoutFirst(remaining);
+				return BoardCoordinate.fromSquare(location);
 			}
 		};
 	}
@@ -162,7 +264,7 @@ public class BoardStateInternal {
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(state);
+		return Long.hashCode(pieceKey);
 	}
 
 	@Override
@@ -174,11 +276,11 @@ public class BoardStateInternal {
 			return false;
 		}
 		BoardStateInternal other = (BoardStateInternal) obj;
-		return Arrays.equals(state, other.state);
+		return pieceKey == other.pieceKey && Arrays.equals(state, other.state);
 	}
 
 	public BoardStateInternal copy() {
-		return new BoardStateInternal(Arrays.copyOf(state, state.length));
+		return new BoardStateInternal(Arrays.copyOf(state, state.length), Arrays.copyOf(mailbox, mailbox.length), Arrays.copyOf(occupancy, occupancy.length), pieceKey);
 	}
 
 	public BoardCoordinate findKing(Player player) {
@@ -191,7 +293,7 @@ public class BoardStateInternal {
         if (index == 64)
             throw new IllegalStateException("King not found");
 
-        return new BoardCoordinate(index / 8, index % 8);
+        return BoardCoordinate.fromSquare(index);
     }
 
 	@Override
@@ -511,4 +511,119 @@ public class BoardTest {
 
 		assertThrowsExactly(IllegalArgumentException.class, () -> board.makeMove("O-O"));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testZobristKey() {
+		Board board1 = new Board();
+		board1.makeMove("Nf3");
+		board1.makeMove("Nf6");
+		board1.makeMove("Nc3");
+
+		Board board2 = new Board();
+		board2.makeMove("Nc3");
+		board2.makeMove("Nf6");
+		board2.makeMove("Nf3"); // transposes into the same position
+
+		assertEquals(board1.boardState().zobristKey(), board2.boardState().zobristKey());
+		assertEquals(board1, board2);
+		assertEquals(BoardState.fromFEN(board1.toFEN()).zobristKey(), board1.boardState().zobristKey()); // incremental key matches a fresh one
+
+		String FEN = "rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR";
+		long key = BoardState.fromFEN(FEN + " w KQkq - 0 1").zobristKey();
+		assertNotEquals(key, BoardState.fromFEN(FEN + " b KQkq - 0 1").zobristKey()); // side to move
+		assertNotEquals(key, BoardState.fromFEN(FEN + " w Kkq - 0 1").zobristKey()); // castling rights
+		assertNotEquals(key, BoardState.fromFEN(FEN + " w KQkq e6 0 1").zobristKey()); // en passant
+		assertEquals(key, BoardState.fromFEN(FEN + " w KQkq - 5 9").zobristKey()); // move clocks are ignored
+	}
+
+	@Test
+	public void testPinsAndEnPassantChecks() {
+		// the c5 pawn may not take en passant: both pawns would leave the rank, exposing the king to the rook
+		Board board = Board.fromFEN("8/8/8/KPp4r/8/8/8/7k w - c6 0 2");
+		assertTrue(board.getLegalMoves().stream().noneMatch(move -> move instanceof EnPassant));
+
+		// taking en passant removes the pawn giving check
+		board = Board.fromFEN("8/8/8/2k5/3Pp3/8/8/4K3 b - d3 0 1");
+		assertTrue(board.getLegalMoves().stream().anyMatch(move -> move instanceof EnPassant));
+
+		// a pinned bishop may only move along the pin, and a pinned knight may not move at all
+		board = Board.fromFEN("4k3/4r3/8/8/1q2N3/8/3B4/4K3 w - - 0 1");
+		assertTrue(board.getLegalMoves().stream().noneMatch(move -> move.piece().type() == PieceType.KNIGHT));
+		assertEquals(2, board.getLegalMoves().stream().filter(move -> move.piece().type() == PieceType.BISHOP).count());
+
+		// in double check, only the king moves
+		board = Board.fromFEN("4k3/8/8/8/8/5n2/8/R3K2r w - - 0 1");
+		assertTrue(board.getLegalMoves().stream().allMatch(move -> move.piece().type() == PieceType.KING));
+	}
+
+	@Test
+	public void testLegalCaptures() {
+		String[] fens = {
+				"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+				"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+				"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+				"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+				"8/8/8/2k5/3Pp3/8/8/4K3 b - d3 0 1",
+		};
+		for (String fen : fens) {
+			var position = new SearchPosition(BoardState.fromFEN(fen));
+			var moves = new MoveList();
+			var captures = new MoveList();
+			var quiets = new MoveList();
+			position.generateLegalMoves(moves);
+			position.generateLegalCaptures(captures);
+			position.generateLegalQuiets(quiets);
+
+			int expected = 0;
+			for (int i = 0; i < moves.size(); i++) {
+				int move = moves.get(i);
+				assertTrue(position.isLegal(move), fen);
+				if (position.isCapture(move) || Move.isPromotion(move)) {
+					expected++;
+					assertTrue(captures.contains(move), fen);
+				} else {
+					assertTrue(quiets.contains(move), fen);
+				}
+			}
+			assertEquals(expected, captures.size(), fen);
+			assertEquals(moves.size() - expected, quiets.size(), fen);
+			assertFalse(position.isLegal(Move.NONE), fen);
+		}
+	}
+
+	@Test
+	public void testStaticExchange() {
+		// an undefended pawn
+		var state = BoardState.fromFEN("1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1");
+		assertEquals(100, state.see(state.fromUCI("e1e5")));
+
+		// a defended pawn, taken with a knight
+		state = BoardState.fromFEN("1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1");
+		assertEquals(100 - 320, state.see(state.fromUCI("d3e5")));
+
+		// the second rook backs up the first through it, so black does better not to recapture
+		state = BoardState.fromFEN("3rk3/8/8/3p4/8/8/3R4/3RK3 w - - 0 1");
+		assertEquals(100, state.see(state.fromUCI("d2d5")));
+		state = BoardState.fromFEN("3rk3/8/8/3p4/8/8/3R4/4K3 w - - 0 1");
+		assertEquals(100 - 500, state.see(state.fromUCI("d2d5")));
+
+		// the king cannot recapture a defended piece
+		state = BoardState.fromFEN("8/8/8/3k4/4p3/8/4Q1B1/4K3 w - - 0 1");
+		assertEquals(100, state.see(state.fromUCI("e2e4")));
+	}
+
+	@Test
+	public void testNullMove() {
+		var state = BoardState.fromFEN("rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 2");
+		var position = new SearchPosition(state);
+
+		position.makeNullMove();
+		assertEquals(Player.WHITE, position.currentTurn());
+		assertTrue(position.lastMoveWasNull());
+		assertEquals(BoardState.fromFEN("rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2").zobristKey(), position.zobristKey());
+
+		position.unmake();
+		assertEquals(state.zobristKey(), position.zobristKey());
+		assertEquals(state.toFEN(), position.toBoardState().toFEN());
+	}
+}
@@ -0,0 +1,140 @@
+package ax.xz.max.chess;
+
+import java.util.SplittableRandom;
+
+/**
+ * Sliding piece attack tables, indexed by square and board occupancy using magic multiplication.
+ * Squares are numbered {@code rank * 8 + file}, matching the layout of {@link BoardStateInternal}.
+ * <p>
+ * For each square, the relevant occupancy (the squares which can block a ray, excluding the board edge)
+ * is multiplied by a magic number which perfectly hashes every blocker configuration into a table
+ * of precomputed attack sets. The magics are found once when the class is loaded.
+ */
+public final class MagicBitboards {
+	private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+	private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {0, 1}, {-1, 0}, {0, -1}};
+
+	private static final long[] BISHOP_MASKS = new long[64];
+	private static final long[] ROOK_MASKS = new long[64];
+
+	private static final long[] BISHOP_MAGICS = new long[64];
+	private static final long[] ROOK_MAGICS = new long[64];
+
+	private static final int[] BISHOP_SHIFTS = new int[64];
+	private static final int[] ROOK_SHIFTS = new int[64];
+
+	private static final long[][] BISHOP_ATTACKS = new long[64][];
+	private static final long[][] ROOK_ATTACKS = new long[64][];
+
+	static {
+		var random = new SplittableRandom(0x5EED_C4E55L); // fixed seed, so the tables are identical on every run
+		for (int square = 0; square < 64; square++) {
+			BISHOP_MASKS[square] = relevantOccupancy(square, BISHOP_DIRECTIONS);
+			ROOK_MASKS[square] = relevantOccupancy(square, ROOK_DIRECTIONS);
+
+			BISHOP_SHIFTS[square] = 64 - Long.bitCount(BISHOP_MASKS[square]);
+			ROOK_SHIFTS[square] = 64 - Long.bitCount(ROOK_MASKS[square]);
+
+			BISHOP_ATTACKS[square] = new long[1 << Long.bitCount(BISHOP_MASKS[square])];
+			ROOK_ATTACKS[square] = new long[1 << Long.bitCount(ROOK_MASKS[square])];
+
+			BISHOP_MAGICS[square] = findMagic(square, BISHOP_MASKS[square], BISHOP_SHIFTS[square], BISHOP_DIRECTIONS, BISHOP_ATTACKS[square], random);
+			ROOK_MAGICS[square] = findMagic(square, ROOK_MASKS[square], ROOK_SHIFTS[square], ROOK_DIRECTIONS, ROOK_ATTACKS[square], random);
+		}
+	}
+
+	private MagicBitboards() {}
+
+	/**
+	 * @return the squares attacked by a bishop on the input square, including the first blocker in each direction
+	 */
+	public static long bishopAttacks(int square, long occupancy) {
+		int index = (int) (((occupancy & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square]);
+		return BISHOP_ATTACKS[square][index];
+	}
+
+	/**
+	 * @return the squares attacked by a rook on the input square, including the first blocker in each direction
+	 */
+	public static long rookAttacks(int square, long occupancy) {
+		int index = (int) (((occupancy & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square]);
+		return ROOK_ATTACKS[square][index];
+	}
+
+	/**
+	 * @return the squares attacked by a queen on the input square, including the first blocker in each direction
+	 */
+	public static long queenAttacks(int square, long occupancy) {
+		return bishopAttacks(square, occupancy) | rookAttacks(square, occupancy);
+	}
+
+	/**
+	 * Computes sliding attacks by walking each ray until it leaves the board or hits a blocker.
+	 * Only used to fill the tables.
+	 */
+	static long slowAttacks(int square, long occupancy, int[][] directions) {
+		long result = 0;
+		for (int[] direction : directions) {
+			int rank = square / 8 + direction[0];
+			int file = square % 8 + direction[1];
+			while (rank >= 0 && rank < 8 && file >= 0 && file < 8) {
+				long bit = 1L << (rank * 8 + file);
+				result |= bit;
+				if ((occupancy & bit) != 0) break;
+				rank += direction[0];
+				file += direction[1];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The squares whose occupancy can change the attack set: every ray square except the last one before the edge
+	 */
+	private static long relevantOccupancy(int square, int[][] directions) {
+		long result = 0;
+		for (int[] direction : directions) {
+			int rank = square / 8 + direction[0];
+			int file = square % 8 + direction[1];
+			while (rank + direction[0] >= 0 && rank + direction[0] < 8 && file + direction[1] >= 0 && file + direction[1] < 8) {
+				result |= 1L << (rank * 8 + file);
+				rank += direction[0];
+				file += direction[1];
+			}
+		}
+		return result;
+	}
+
+	private static long findMagic(int square, long mask, int shift, int[][] directions, long[] table, SplittableRandom random) {
+		int size = 1 << Long.bitCount(mask);
+		long[] occupancies = new long[size];
+		long[] attacks = new long[size];
+
+		// enumerate every subset of the mask (carry-rippler)
+		long subset = 0;
+		for (int i = 0; i < size; i++) {
+			occupancies[i] = subset;
+			attacks[i] = slowAttacks(square, subset, directions);
+			subset = (subset - mask) & mask;
+		}
+
+		int[] epoch = new int[size];
+		for (int attempt = 1; ; attempt++) {
+			long magic = random.nextLong() & random.nextLong() & random.nextLong(); // sparse candidates work best
+			if (Long.bitCount((mask * magic) & 0xFF00_0000_0000_0000L) < 6) continue;
+
+			boolean collision = false;
+			for (int i = 0; i < size && !collision; i++) {
+				int index = (int) ((occupancies[i] * magic) >>> shift);
+				if (epoch[index] != attempt) {
+					epoch[index] = attempt;
+					table[index] = attacks[i];
+				} else if (table[index] != attacks[i]) {
+					collision = true; // two configurations with different attacks share a slot
+				}
+			}
+
+			if (!collision) return magic;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package ax.xz.max.chess;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MagicBitboardsTest {
+	private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+	private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {0, 1}, {-1, 0}, {0, -1}};
+
+	@Test
+	void testMatchesRayWalk() {
+		var random = new SplittableRandom(42);
+		for (int i = 0; i < 10_000; i++) {
+			int square = random.nextInt(64);
+			long occupancy = random.nextLong() & random.nextLong();
+
+			assertEquals(MagicBitboards.slowAttacks(square, occupancy, BISHOP_DIRECTIONS), MagicBitboards.bishopAttacks(square, occupancy));
+			assertEquals(MagicBitboards.slowAttacks(square, occupancy, ROOK_DIRECTIONS), MagicBitboards.rookAttacks(square, occupancy));
+		}
+	}
+
+	@Test
+	void testEmptyBoard() {
+		int d4 = BoardCoordinate.fromString("d4").square();
+		assertEquals(13, Long.bitCount(MagicBitboards.bishopAttacks(d4, 0)));
+		assertEquals(14, Long.bitCount(MagicBitboards.rookAttacks(d4, 0)));
+		assertEquals(27, Long.bitCount(MagicBitboards.queenAttacks(d4, 0)));
+	}
+
+	@Test
+	void testBlockers() {
+		// rook on a1, blocked by pieces on a3 and c1
+		int a1 = BoardCoordinate.fromString("a1").square();
+		long occupancy = (1L << BoardCoordinate.fromString("a3").square()) | (1L << BoardCoordinate.fromString("c1").square());
+
+		long attacks = MagicBitboards.rookAttacks(a1, occupancy);
+		assertEquals(4, Long.bitCount(attacks)); // a2, a3, b1, c1
+		assertNotEquals(0, attacks & (1L << BoardCoordinate.fromString("a3").square()));
+		assertEquals(0, attacks & (1L << BoardCoordinate.fromString("a4").square()));
+	}
+}
@@ -0,0 +1,78 @@
+package ax.xz.max.chess;
+
+import ax.xz.max.chess.moves.*;
+
+/**
+ * Moves packed into the low 16 bits of an int, for use inside search:
+ * <pre>
+ * bits  0-5   from square
+ * bits  6-11  to square
+ * bits 12-15  flag: one of the constants below
+ * </pre>
+ * The moving and captured pieces are not stored; they are read from the position the move is made in.
+ * Use {@link SearchPosition#toPlayerMove(int)} and {@link #of(PlayerMove)} to convert at the API boundary.
+ */
+public final class Move {
+	/** not a move; no legal move goes from a1 to a1 */
+	public static final int NONE = 0;
+
+	public static final int QUIET = 0;
+	public static final int DOUBLE_PAWN_PUSH = 1;
+	public static final int CASTLE = 2;
+	public static final int EN_PASSANT = 3;
+	public static final int PROMOTE_KNIGHT = 4;
+	public static final int PROMOTE_BISHOP = 5;
+	public static final int PROMOTE_ROOK = 6;
+	public static final int PROMOTE_QUEEN = 7;
+
+	private static final PieceType[] TYPES = PieceType.values();
+
+	private Move() {}
+
+	public static int of(int from, int to, int flag) {
+		return from | (to << 6) | (flag << 12);
+	}
+
+	/** @return the packed form of a move */
+	public static int of(PlayerMove move) {
+		int from = move.from().square();
+		int to = move.to().square();
+		return switch (move) {
+			case RegularMove regularMove -> of(from, to, regularMove.piece().type() == PieceType.PAWN && Math.abs(to - from) == 16 ? DOUBLE_PAWN_PUSH : QUIET);
+			case Promotion promotion -> promotion(from, to, promotion.newPiece().type());
+			case EnPassant ignored -> of(from, to, EN_PASSANT);
+			case Castle ignored -> of(from, to, CASTLE);
+		};
+	}
+
+	public static int promotion(int from, int to, PieceType type) {
+		return of(from, to, PROMOTE_KNIGHT + type.ordinal() - PieceType.KNIGHT.ordinal());
+	}
+
+	public static int from(int move) {
+		return move & 0x3F;
+	}
+
+	public static int to(int move) {
+		return (move >>> 6) & 0x3F;
+	}
+
+	public static int flag(int move) {
+		return (move >>> 12) & 0xF;
+	}
+
+	public static boolean isPromotion(int move) {
+		return flag(move) >= PROMOTE_KNIGHT;
+	}
+
+	/** @return the type of piece a promotion produces, or null if the move is not a promotion */
+	public static PieceType promotionType(int move) {
+		return isPromotion(move) ? TYPES[flag(move) - PROMOTE_KNIGHT + PieceType.KNIGHT.ordinal()] : null;
+	}
+
+	/** @see PlayerMove#toUCI() */
+	public static String toUCI(int move) {
+		String result = BoardCoordinate.fromSquare(from(move)).toString() + BoardCoordinate.fromSquare(to(move));
+		return isPromotion(move) ? result + Character.toLowerCase(promotionType(move).toChar()) : result;
+	}
+}
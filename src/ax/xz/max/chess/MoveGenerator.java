@@ -0,0 +1,236 @@
+package ax.xz.max.chess;
+
+import ax.xz.max.chess.moves.*;
+
+import static ax.xz.max.chess.PieceType.*;
+
+/**
+ * Generates strictly legal moves, packed as described in {@link Move}.
+ * <p>
+ * The checkers and pinned pieces are found once per position. While in check, every piece except the king
+ * may only move onto the check mask: the checking piece, or a square between it and the king.
+ * A pinned piece may only move along the line through its king and the pinning piece.
+ * The king itself avoids every attacked square, looking through its own square so it cannot step back along a checking ray.
+ * Only en passant, which removes two pieces from a rank at once, is tested by applying it.
+ */
+final class MoveGenerator {
+	// castling rights as a bit set, see Zobrist#castling(int)
+	static final int WHITE_SHORT_CASTLE = 1;
+	static final int WHITE_LONG_CASTLE = 2;
+	static final int BLACK_SHORT_CASTLE = 4;
+	static final int BLACK_LONG_CASTLE = 8;
+
+	private static final PieceType[] SLIDERS_AND_KNIGHTS = {KNIGHT, BISHOP, ROOK, QUEEN};
+
+	// kinds of move to generate; promotions count as captures
+	private static final int CAPTURES = 1;
+	private static final int QUIETS = 2;
+	private static final int ALL_MOVES = CAPTURES | QUIETS;
+
+	private static final long[] CASTLE_CLEARANCE = new long[Castle.values().length];
+	private static final long[] CASTLE_PROTECTED = new long[Castle.values().length];
+
+	static {
+		for (Castle castle : Castle.values()) {
+			for (BoardCoordinate square : castle.getClearanceSquares())
+				CASTLE_CLEARANCE[castle.ordinal()] |= Bitboards.bit(square.square());
+			for (BoardCoordinate square : castle.getProtectedSquares())
+				CASTLE_PROTECTED[castle.ordinal()] |= Bitboards.bit(square.square());
+		}
+	}
+
+	private MoveGenerator() {}
+
+	/**
+	 * Appends every legal move of the player to the list
+	 *
+	 * @param castlingRights the castling rights as a bit set, see {@link Zobrist#castling(int)}
+	 * @param enPassantSquare the en passant target square, or -1 if there is none
+	 */
+	static void generateLegalMoves(BoardStateInternal board, Player player, int castlingRights, int enPassantSquare, MoveList moves) {
+		generate(board, player, castlingRights, enPassantSquare, ALL_MOVES, -1L, moves);
+	}
+
+	/**
+	 * Appends every legal move of the piece on the given square to the list
+	 *
+	 * @param castlingRights the castling rights as a bit set, see {@link Zobrist#castling(int)}
+	 * @param enPassantSquare the en passant target square, or -1 if there is none
+	 */
+	static void generateLegalMovesFrom(BoardStateInternal board, Player player, int castlingRights, int enPassantSquare, int from, MoveList moves) {
+		generate(board, player, castlingRights, enPassantSquare, ALL_MOVES, Bitboards.bit(from), moves);
+	}
+
+	/**
+	 * Appends every legal capture and promotion of the player to the list, for quiescence search
+	 *
+	 * @param enPassantSquare the en passant target square, or -1 if there is none
+	 */
+	static void generateLegalCaptures(BoardStateInternal board, Player player, int enPassantSquare, MoveList moves) {
+		generate(board, player, 0, enPassantSquare, CAPTURES, -1L, moves);
+	}
+
+	/**
+	 * Appends every legal move of the player which is neither a capture nor a promotion to the list,
+	 * i.e. exactly the moves {@link #generateLegalCaptures} leaves out
+	 *
+	 * @param castlingRights the castling rights as a bit set, see {@link Zobrist#castling(int)}
+	 */
+	static void generateLegalQuiets(BoardStateInternal board, Player player, int castlingRights, MoveList moves) {
+		generate(board, player, castlingRights, -1, QUIETS, -1L, moves);
+	}
+
+	/**
+	 * @param kinds {@link #CAPTURES}, {@link #QUIETS} or both
+	 * @param fromMask the squares whose pieces are to be moved
+	 */
+	private static void generate(BoardStateInternal board, Player player, int castlingRights, int enPassantSquare, int kinds, long fromMask, MoveList moves) {
+		Player opponent = player.opponent();
+		long own = board.occupancy(player);
+		long enemy = board.occupancy(opponent);
+		long occupancy = own | enemy;
+		int king = board.kingSquare(player);
+		long targets = ((kinds & CAPTURES) != 0 ? enemy : 0) | ((kinds & QUIETS) != 0 ? ~occupancy : 0);
+
+		long checkers = board.attackersTo(king, opponent, occupancy);
+
+		// king moves, with the king lifted off the board so that sliders see through it
+		if ((fromMask & Bitboards.bit(king)) != 0) {
+			long kingless = occupancy & ~Bitboards.bit(king);
+			for (long destinations = Bitboards.kingAttacks(king) & targets; destinations != 0; destinations = Bitboards.withoutFirst(destinations)) {
+				int to = Bitboards.firstSquare(destinations);
+				if (board.attackersTo(to, opponent, kingless) == 0)
+					moves.add(Move.of(king, to, Move.QUIET));
+			}
+		}
+
+		if (Bitboards.count(checkers) > 1)
+			return; // double check: only the king can move
+
+		long checkMask = checkers == 0 ? -1L : checkers | Bitboards.between(king, Bitboards.firstSquare(checkers));
+		long pinned = pinnedPieces(board, player, king, occupancy);
+
+		for (PieceType type : SLIDERS_AND_KNIGHTS) {
+			for (long pieces = board.bitBoardFor(player, type) & fromMask; pieces != 0; pieces = Bitboards.withoutFirst(pieces)) {
+				int from = Bitboards.firstSquare(pieces);
+				long destinations = switch (type) {
+					case KNIGHT -> Bitboards.knightAttacks(from);
+					case BISHOP -> MagicBitboards.bishopAttacks(from, occupancy);
+					case ROOK -> MagicBitboards.rookAttacks(from, occupancy);
+					default -> MagicBitboards.queenAttacks(from, occupancy);
+				} & targets & checkMask;
+				if ((pinned & Bitboards.bit(from)) != 0)
+					destinations &= Bitboards.line(king, from);
+
+				for (; destinations != 0; destinations = Bitboards.withoutFirst(destinations))
+					moves.add(Move.of(from, Bitboards.firstSquare(destinations), Move.QUIET));
+			}
+		}
+
+		long promotionRank = Bitboards.rankMask(opponent.homeRank());
+		boolean quiets = (kinds & QUIETS) != 0;
+		boolean captures = (kinds & CAPTURES) != 0;
+		for (long pawns = board.bitBoardFor(player, PAWN) & fromMask; pawns != 0; pawns = Bitboards.withoutFirst(pawns)) {
+			int from = Bitboards.firstSquare(pawns);
+			long allowed = checkMask;
+			if ((pinned & Bitboards.bit(from)) != 0)
+				allowed &= Bitboards.line(king, from);
+
+			long singleStep = Bitboards.forward(player, Bitboards.bit(from)) & ~occupancy;
+			long doubleStep = Bitboards.rankOf(from) == player.pawnRank() && quiets ? Bitboards.forward(player, singleStep) & ~occupancy : 0;
+			if (!quiets)
+				singleStep &= promotionRank;
+			else if (!captures)
+				singleStep &= ~promotionRank;
+			long pawnCaptures = captures ? Bitboards.pawnAttacks(player, from) & enemy : 0;
+
+			for (long destinations = (singleStep | pawnCaptures) & allowed; destinations != 0; destinations = Bitboards.withoutFirst(destinations)) {
+				int to = Bitboards.firstSquare(destinations);
+				if ((Bitboards.bit(to) & promotionRank) != 0) {
+					moves.add(Move.of(from, to, Move.PROMOTE_QUEEN));
+					moves.add(Move.of(from, to, Move.PROMOTE_ROOK));
+					moves.add(Move.of(from, to, Move.PROMOTE_BISHOP));
+					moves.add(Move.of(from, to, Move.PROMOTE_KNIGHT));
+				} else {
+					moves.add(Move.of(from, to, Move.QUIET));
+				}
+			}
+
+			if ((doubleStep & allowed) != 0)
+				moves.add(Move.of(from, Bitboards.firstSquare(doubleStep), Move.DOUBLE_PAWN_PUSH));
+
+			if (captures && enPassantSquare != -1 && (Bitboards.pawnAttacks(player, from) & Bitboards.bit(enPassantSquare)) != 0
+					&& isLegalEnPassant(board, player, king, from, enPassantSquare))
+				moves.add(Move.of(from, enPassantSquare, Move.EN_PASSANT));
+		}
+
+		if (checkers == 0 && quiets && (fromMask & Bitboards.bit(king)) != 0) {
+			addCastleIfLegal(board, Castle.shortCastle(player), castlingRights, occupancy, moves);
+			addCastleIfLegal(board, Castle.longCastle(player), castlingRights, occupancy, moves);
+		}
+	}
+
+	/**
+	 * @return the player's pieces which are the only piece between their king and an enemy slider
+	 */
+	private static long pinnedPieces(BoardStateInternal board, Player player, int king, long occupancy) {
+		Player opponent = player.opponent();
+		long queens = board.bitBoardFor(opponent, QUEEN);
+		long snipers = (MagicBitboards.rookAttacks(king, 0) & (board.bitBoardFor(opponent, ROOK) | queens))
+				| (MagicBitboards.bishopAttacks(king, 0) & (board.bitBoardFor(opponent, BISHOP) | queens));
+
+		long pinned = 0;
+		for (; snipers != 0; snipers = Bitboards.withoutFirst(snipers)) {
+			long blockers = Bitboards.between(king, Bitboards.firstSquare(snipers)) & occupancy;
+			if (Bitboards.count(blockers) == 1)
+				pinned |= blockers & board.occupancy(player);
+		}
+		return pinned;
+	}
+
+	/**
+	 * Applies the capture to the occupancy and tests the king: both pawns leave the rank at once,
+	 * which can expose the king in ways the pin and check masks do not describe
+	 */
+	private static boolean isLegalEnPassant(BoardStateInternal board, Player player, int king, int from, int to) {
+		long captured = Bitboards.bit(Bitboards.square(Bitboards.rankOf(from), Bitboards.fileOf(to)));
+		long occupancy = (board.occupancy() & ~Bitboards.bit(from) & ~captured) | Bitboards.bit(to);
+		return (board.attackersTo(king, player.opponent(), occupancy) & ~captured) == 0;
+	}
+
+	private static void addCastleIfLegal(BoardStateInternal board, Castle castle, int castlingRights, long occupancy, MoveList moves) {
+		if ((castlingRights & castlingRight(castle)) == 0) return;
+		if ((CASTLE_CLEARANCE[castle.ordinal()] & occupancy) != 0) return;
+
+		for (long squares = CASTLE_PROTECTED[castle.ordinal()]; squares != 0; squares = Bitboards.withoutFirst(squares)) {
+			if (board.isAttacked(Bitboards.firstSquare(squares), castle.getPlayer().opponent()))
+				return;
+		}
+		moves.add(Move.of(castle));
+	}
+
+	static int castlingRight(Castle castle) {
+		return switch (castle) {
+			case WHITE_SHORT -> WHITE_SHORT_CASTLE;
+			case WHITE_LONG -> WHITE_LONG_CASTLE;
+			case BLACK_SHORT -> BLACK_SHORT_CASTLE;
+			case BLACK_LONG -> BLACK_LONG_CASTLE;
+		};
+	}
+
+	/**
+	 * @param move a legal move on the board
+	 * @return the API form of the move
+	 */
+	static PlayerMove toPlayerMove(BoardStateInternal board, int move) {
+		var from = BoardCoordinate.fromSquare(Move.from(move));
+		var to = BoardCoordinate.fromSquare(Move.to(move));
+		Piece piece = board.get(Move.from(move));
+		return switch (Move.flag(move)) {
+			case Move.CASTLE -> to.file() > from.file() ? Castle.shortCastle(piece.owner()) : Castle.longCastle(piece.owner());
+			case Move.EN_PASSANT -> EnPassant.enPassant(piece.owner(), from, to);
+			case Move.QUIET, Move.DOUBLE_PAWN_PUSH -> new RegularMove(piece, from, to);
+			default -> new Promotion(Piece.of(piece.owner(), Move.promotionType(move)), piece, from, to);
+		};
+	}
+}
@@ -0,0 +1,78 @@
+package ax.xz.max.chess;
+
+/**
+ * A reusable buffer of packed moves (see {@link Move}) and their ordering scores,
+ * so generating and sorting moves does not allocate.
+ */
+public final class MoveList {
+	/** more than the number of legal moves in any reachable position */
+	public static final int CAPACITY = 256;
+
+	private final int[] moves = new int[CAPACITY];
+	private final int[] scores = new int[CAPACITY];
+	private int size;
+
+	public void add(int move) {
+		moves[size++] = move;
+	}
+
+	public int get(int index) {
+		return moves[index];
+	}
+
+	public void set(int index, int move) {
+		moves[index] = move;
+	}
+
+	/** Removes every move from the input index onwards */
+	public void truncate(int size) {
+		this.size = size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public boolean contains(int move) {
+		for (int i = 0; i < size; i++) {
+			if (moves[i] == move)
+				return true;
+		}
+		return false;
+	}
+
+	public int score(int index) {
+		return scores[index];
+	}
+
+	/** Sets the score of the move at the index, used by {@link #sortByScore()} */
+	public void setScore(int index, int score) {
+		scores[index] = score;
+	}
+
+	/**
+	 * Sorts the moves from highest to lowest score. Moves with equal scores keep their order.
+	 */
+	public void sortByScore() {
+		// insertion sort: lists are short, and it needs no extra space
+		for (int i = 1; i < size; i++) {
+			int move = moves[i];
+			int moveScore = scores[i];
+			int j = i - 1;
+			for (; j >= 0 && scores[j] < moveScore; j--) {
+				moves[j + 1] = moves[j];
+				scores[j + 1] = scores[j];
+			}
+			moves[j + 1] = move;
+			scores[j + 1] = moveScore;
+		}
+	}
+}
@@ -4,6 +4,19 @@ public record Piece(
 		Player owner,
 		PieceType type
 ) {
+	private static final Piece[][] PIECES = new Piece[Player.values().length][PieceType.values().length];
+
+	static {
+		for (Player player : Player.values())
+			for (PieceType type : PieceType.values())
+				PIECES[player.ordinal()][type.ordinal()] = new Piece(player, type);
+	}
+
+	/** @return the shared piece instance for an owner and type */
+	public static Piece of(Player owner, PieceType type) {
+		return PIECES[owner.ordinal()][type.ordinal()];
+	}
+
 	/** returns a piece from a character for FEN notation */
 	public static Piece fromChar(char c) {
 		return new Piece(Character.isUpperCase(c) ? Player.WHITE : Player.BLACK, PieceType.fromChar(Character.toUpperCase(c)));
@@ -15,6 +15,20 @@ public enum PieceType {
 		};
 	}
 
+	/**
+	 * @return the material value of the piece in centipawns, or 0 for the king, which is never captured
+	 */
+	public int value() {
+		return switch (this) {
+			case PAWN -> 100;
+			case KNIGHT -> 320;
+			case BISHOP -> 330;
+			case ROOK -> 500;
+			case QUEEN -> 900;
+			case KING -> 0;
+		};
+	}
+
 	public char toChar() {
 		return switch (this) {
 			case PAWN -> 'P';
@@ -0,0 +1,432 @@
+package ax.xz.max.chess;
+
+import ax.xz.max.chess.moves.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static ax.xz.max.chess.MoveGenerator.BLACK_LONG_CASTLE;
+import static ax.xz.max.chess.MoveGenerator.BLACK_SHORT_CASTLE;
+import static ax.xz.max.chess.MoveGenerator.WHITE_LONG_CASTLE;
+import static ax.xz.max.chess.MoveGenerator.WHITE_SHORT_CASTLE;
+import static ax.xz.max.chess.PieceType.KING;
+import static ax.xz.max.chess.PieceType.PAWN;
+
+/**
+ * A mutable position for use inside search.
+ * Moves are packed as described in {@link Move}, applied in place with {@link #make(int)}
+ * and taken back with {@link #unmake()},
+ * using a fixed-size undo stack, so walking the tree does not allocate a new board per node.
+ * <p>
+ * Outside of search, use the immutable {@link BoardState} instead.
+ * This class is not thread-safe; give each thread its own {@link #copy()}.
+ */
+public final class SearchPosition {
+	/** the maximum number of moves which can be made on top of the starting position */
+	public static final int MAX_PLY = 256;
+
+	/** castling rights which survive a move from or to each square */
+	private static final int[] CASTLING_MASK = new int[64];
+
+	static {
+		Arrays.fill(CASTLING_MASK, 0b1111);
+		CASTLING_MASK[Bitboards.square(0, 4)] &= ~(WHITE_SHORT_CASTLE | WHITE_LONG_CASTLE);
+		CASTLING_MASK[Bitboards.square(0, 7)] &= ~WHITE_SHORT_CASTLE;
+		CASTLING_MASK[Bitboards.square(0, 0)] &= ~WHITE_LONG_CASTLE;
+		CASTLING_MASK[Bitboards.square(7, 4)] &= ~(BLACK_SHORT_CASTLE | BLACK_LONG_CASTLE);
+		CASTLING_MASK[Bitboards.square(7, 7)] &= ~BLACK_SHORT_CASTLE;
+		CASTLING_MASK[Bitboards.square(7, 0)] &= ~BLACK_LONG_CASTLE;
+	}
+
+	private final BoardStateInternal board;
+	private Player currentTurn;
+	private int castlingRights;
+	private int enPassantSquare; // -1 if there is no en passant target
+	private int halfMoveClock;
+	private int fullMoveNumber;
+	private long zobristKey;
+
+	// undo stack, indexed by ply
+	private int ply;
+	private final int[] undoMove = new int[MAX_PLY];
+	private final byte[] undoCaptured = new byte[MAX_PLY]; // piece index, or -1 if nothing was captured
+	private final int[] undoCastlingRights = new int[MAX_PLY];
+	private final int[] undoEnPassantSquare = new int[MAX_PLY];
+	private final int[] undoHalfMoveClock = new int[MAX_PLY];
+	private final long[] undoZobristKey = new long[MAX_PLY];
+
+	/** keys of the positions before the current one, oldest first; the game history followed by the search path */
+	private final long[] keyHistory;
+	private final int gameHistoryLength;
+
+	private final MoveList legalityScratch = new MoveList();
+
+	private SearchPosition(BoardStateInternal board, Player currentTurn, int castlingRights, int enPassantSquare, int halfMoveClock, int fullMoveNumber, long[] gameHistory) {
+		this.board = board;
+		this.currentTurn = currentTurn;
+		this.castlingRights = castlingRights;
+		this.enPassantSquare = enPassantSquare;
+		this.halfMoveClock = halfMoveClock;
+		this.fullMoveNumber = fullMoveNumber;
+		this.zobristKey = computeKey();
+
+		this.gameHistoryLength = gameHistory.length;
+		this.keyHistory = Arrays.copyOf(gameHistory, gameHistory.length + MAX_PLY);
+	}
+
+	public SearchPosition(BoardState state) {
+		this(state, new long[0]);
+	}
+
+	private SearchPosition(BoardState state, long[] gameHistory) {
+		this(
+				state.board().copy(),
+				state.currentTurn(),
+				(state.canShortCastle(Player.WHITE) ? WHITE_SHORT_CASTLE : 0)
+						| (state.canLongCastle(Player.WHITE) ? WHITE_LONG_CASTLE : 0)
+						| (state.canShortCastle(Player.BLACK) ? BLACK_SHORT_CASTLE : 0)
+						| (state.canLongCastle(Player.BLACK) ? BLACK_LONG_CASTLE : 0),
+				state.enPassantTarget() == null ? -1 : state.enPassantTarget().square(),
+				state.halfMoveClock(),
+				state.fullMoveNumber(),
+				gameHistory
+		);
+	}
+
+	/**
+	 * Creates a search position from the board's current state,
+	 * remembering the positions played so far so that repetitions can be detected
+	 */
+	public static SearchPosition of(Board board) {
+		long[] history = board.getMoves().stream()
+				.mapToLong(record -> record.prevBoard().zobristKey())
+				.toArray();
+		return new SearchPosition(board.boardState(), history);
+	}
+
+	/**
+	 * @return an independent position with the same state, history and undo stack,
+	 * so that it can carry on searching at the same ply, or unmake the moves made so far
+	 */
+	public SearchPosition copy() {
+		var result = new SearchPosition(board.copy(), currentTurn, castlingRights, enPassantSquare, halfMoveClock, fullMoveNumber, Arrays.copyOf(keyHistory, gameHistoryLength));
+		result.ply = ply;
+		System.arraycopy(keyHistory, gameHistoryLength, result.keyHistory, gameHistoryLength, ply);
+		System.arraycopy(undoMove, 0, result.undoMove, 0, ply);
+		System.arraycopy(undoCaptured, 0, result.undoCaptured, 0, ply);
+		System.arraycopy(undoCastlingRights, 0, result.undoCastlingRights, 0, ply);
+		System.arraycopy(undoEnPassantSquare, 0, result.undoEnPassantSquare, 0, ply);
+		System.arraycopy(undoHalfMoveClock, 0, result.undoHalfMoveClock, 0, ply);
+		System.arraycopy(undoZobristKey, 0, result.undoZobristKey, 0, ply);
+		return result;
+	}
+
+	public BoardState toBoardState() {
+		return new BoardState(
+				board.copy(),
+				currentTurn,
+				enPassantSquare == -1 ? null : BoardCoordinate.fromSquare(enPassantSquare),
+				halfMoveClock,
+				fullMoveNumber,
+				(castlingRights & WHITE_SHORT_CASTLE) != 0,
+				(castlingRights & WHITE_LONG_CASTLE) != 0,
+				(castlingRights & BLACK_SHORT_CASTLE) != 0,
+				(castlingRights & BLACK_LONG_CASTLE) != 0
+		);
+	}
+
+	private long computeKey() {
+		return board.pieceKey()
+				^ Zobrist.sideToMove(currentTurn)
+				^ Zobrist.castling(castlingRights)
+				^ (enPassantSquare == -1 ? 0 : Zobrist.enPassantFile(Bitboards.fileOf(enPassantSquare)));
+	}
+
+	public Player currentTurn() {
+		return currentTurn;
+	}
+
+	/** @return the number of moves made on top of the starting position */
+	public int ply() {
+		return ply;
+	}
+
+	/** @return the Zobrist key of the position, equal to {@link BoardState#zobristKey()} of the same position */
+	public long zobristKey() {
+		return zobristKey;
+	}
+
+	public Piece pieceAt(int square) {
+		return board.get(square);
+	}
+
+	/** @return a bitboard of every square occupied by the player's pieces of the given type */
+	public long bitBoardFor(Player player, PieceType type) {
+		return board.bitBoardFor(player, type);
+	}
+
+	/** @return a bitboard of every occupied square */
+	public long occupancy() {
+		return board.occupancy();
+	}
+
+	public boolean isInCheck() {
+		return board.isAttacked(board.kingSquare(currentTurn), currentTurn.opponent());
+	}
+
+	/** @return how many pieces the side to move has besides its king and pawns; with few of them, passing might be its best option */
+	public int nonPawnPieceCount() {
+		return Bitboards.count(board.occupancy(currentTurn) & ~board.bitBoardFor(currentTurn, PAWN) & ~board.bitBoardFor(currentTurn, KING));
+	}
+
+	/** @return whether the last move made was a {@link #makeNullMove() null move} */
+	public boolean lastMoveWasNull() {
+		return ply > 0 && undoMove[ply - 1] == Move.NONE;
+	}
+
+	/** @return whether the move takes a piece, including en passant */
+	public boolean isCapture(int move) {
+		return Move.flag(move) == Move.EN_PASSANT || (Move.flag(move) != Move.CASTLE && !board.isEmpty(Move.to(move)));
+	}
+
+	/**
+	 * @return the type of piece the move takes, or null if it is not a capture
+	 */
+	public PieceType capturedType(int move) {
+		return switch (Move.flag(move)) {
+			case Move.EN_PASSANT -> PieceType.PAWN;
+			case Move.CASTLE -> null;
+			default -> board.isEmpty(Move.to(move)) ? null : board.get(Move.to(move)).type();
+		};
+	}
+
+	/**
+	 * @param move a legal move in this position
+	 * @return the static exchange evaluation of the move in centipawns, see {@link BoardState#see(PlayerMove)}
+	 */
+	public int see(int move) {
+		return StaticExchange.see(board, move);
+	}
+
+	/**
+	 * @param move a legal move in this position
+	 * @return the API form of the move
+	 */
+	public PlayerMove toPlayerMove(int move) {
+		return MoveGenerator.toPlayerMove(board, move);
+	}
+
+	/**
+	 * @return whether the position is drawn by the fifty-move rule, or repeats an earlier position.
+	 * A single repetition counts, since the side which repeated could repeat again.
+	 */
+	public boolean isDraw() {
+		if (halfMoveClock >= 100)
+			return true;
+
+		int end = gameHistoryLength + ply;
+		int start = Math.max(0, end - halfMoveClock);
+		for (int i = end - 2; i >= start; i -= 2) { // only positions with the same side to move can repeat
+			if (keyHistory[i] == zobristKey)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param move a legal move in this position, packed as described in {@link Move}
+	 */
+	public void make(int move) {
+		pushUndo(move);
+
+		int from = Move.from(move);
+		int to = Move.to(move);
+		int piece = board.indexAt(from);
+		int captured = board.indexAt(to);
+		boolean resetHalfMoves = captured != -1 || piece == BoardStateInternal.indexOf(currentTurn, PAWN);
+		enPassantSquare = -1;
+
+		switch (Move.flag(move)) {
+			case Move.QUIET -> {
+				board.set(piece, to);
+				board.set(-1, from);
+			}
+			case Move.DOUBLE_PAWN_PUSH -> {
+				board.set(piece, to);
+				board.set(-1, from);
+				enPassantSquare = (from + to) / 2;
+			}
+			case Move.EN_PASSANT -> {
+				int capturedSquare = enPassantCaptureSquare(from, to);
+				captured = board.indexAt(capturedSquare);
+				board.set(piece, to);
+				board.set(-1, from);
+				board.set(-1, capturedSquare);
+			}
+			case Move.CASTLE -> {
+				board.set(piece, to);
+				board.set(-1, from);
+				board.set(board.indexAt(castleRookFrom(to)), castleRookTo(to));
+				board.set(-1, castleRookFrom(to));
+			}
+			default -> { // promotion
+				board.set(BoardStateInternal.indexOf(currentTurn, Move.promotionType(move)), to);
+				board.set(-1, from);
+			}
+		}
+
+		undoCaptured[ply] = (byte) captured;
+		castlingRights &= CASTLING_MASK[from] & CASTLING_MASK[to];
+		halfMoveClock = resetHalfMoves ? 0 : halfMoveClock + 1;
+		fullMoveNumber++;
+		currentTurn = currentTurn.opponent();
+		zobristKey = computeKey();
+		ply++;
+	}
+
+	/**
+	 * Passes the turn without moving, for null-move pruning. Undone by {@link #unmake()} like any other move.
+	 * Must not be used while in check, since the opponent could then take the king.
+	 */
+	public void makeNullMove() {
+		pushUndo(Move.NONE);
+		undoCaptured[ply] = -1;
+		enPassantSquare = -1;
+		halfMoveClock = 0; // so that repetitions are never found across the null move, which is not a real move
+		fullMoveNumber++;
+		currentTurn = currentTurn.opponent();
+		zobristKey = computeKey();
+		ply++;
+	}
+
+	private void pushUndo(int move) {
+		if (ply == MAX_PLY)
+			throw new IllegalStateException("Search position undo stack is full");
+
+		undoMove[ply] = move;
+		undoCastlingRights[ply] = castlingRights;
+		undoEnPassantSquare[ply] = enPassantSquare;
+		undoHalfMoveClock[ply] = halfMoveClock;
+		undoZobristKey[ply] = zobristKey;
+		keyHistory[gameHistoryLength + ply] = zobristKey;
+	}
+
+	public void unmake() {
+		if (ply == 0)
+			throw new IllegalStateException("No moves to unmake");
+
+		ply--;
+		currentTurn = currentTurn.opponent();
+		int move = undoMove[ply];
+		int captured = undoCaptured[ply];
+		int from = Move.from(move);
+		int to = Move.to(move);
+
+		if (move != Move.NONE) { // a null move moved nothing
+			switch (Move.flag(move)) {
+				case Move.QUIET, Move.DOUBLE_PAWN_PUSH -> {
+					board.set(board.indexAt(to), from);
+					board.set(captured, to);
+				}
+				case Move.EN_PASSANT -> {
+					board.set(board.indexAt(to), from);
+					board.set(-1, to);
+					board.set(captured, enPassantCaptureSquare(from, to));
+				}
+				case Move.CASTLE -> {
+					board.set(board.indexAt(to), from);
+					board.set(-1, to);
+					board.set(board.indexAt(castleRookTo(to)), castleRookFrom(to));
+					board.set(-1, castleRookTo(to));
+				}
+				default -> { // promotion
+					board.set(BoardStateInternal.indexOf(currentTurn, PAWN), from);
+					board.set(captured, to);
+				}
+			}
+		}
+
+		castlingRights = undoCastlingRights[ply];
+		enPassantSquare = undoEnPassantSquare[ply];
+		halfMoveClock = undoHalfMoveClock[ply];
+		zobristKey = undoZobristKey[ply];
+		fullMoveNumber--;
+	}
+
+	/** @return the square of the pawn taken by an en passant capture: beside the capturing pawn's starting square */
+	private static int enPassantCaptureSquare(int from, int to) {
+		return Bitboards.square(Bitboards.rankOf(from), Bitboards.fileOf(to));
+	}
+
+	private static int castleRookFrom(int kingTo) {
+		return Bitboards.fileOf(kingTo) == 6 ? kingTo + 1 : kingTo - 2;
+	}
+
+	private static int castleRookTo(int kingTo) {
+		return Bitboards.fileOf(kingTo) == 6 ? kingTo - 1 : kingTo + 1;
+	}
+
+	/**
+	 * @return every legal move for the side to move.
+	 * Allocates; inside search, use {@link #generateLegalMoves(MoveList)} instead.
+	 */
+	public List<PlayerMove> legalMoves() {
+		var moves = new MoveList();
+		generateLegalMoves(moves);
+
+		var result = new ArrayList<PlayerMove>(moves.size());
+		for (int i = 0; i < moves.size(); i++)
+			result.add(toPlayerMove(moves.get(i)));
+		return result;
+	}
+
+	/**
+	 * Replaces the contents of the list with every legal move for the side to move
+	 */
+	public void generateLegalMoves(MoveList moves) {
+		moves.clear();
+		MoveGenerator.generateLegalMoves(board, currentTurn, castlingRights, enPassantSquare, moves);
+	}
+
+	/**
+	 * Replaces the contents of the list with every legal move the player could make if it were their turn,
+	 * for evaluators which weigh both sides' moves. Only the side to move may capture en passant.
+	 */
+	public void generateLegalMoves(Player player, MoveList moves) {
+		moves.clear();
+		MoveGenerator.generateLegalMoves(board, player, castlingRights, player == currentTurn ? enPassantSquare : -1, moves);
+	}
+
+	/**
+	 * Replaces the contents of the list with every legal capture and promotion for the side to move
+	 */
+	public void generateLegalCaptures(MoveList moves) {
+		moves.clear();
+		MoveGenerator.generateLegalCaptures(board, currentTurn, enPassantSquare, moves);
+	}
+
+	/**
+	 * Replaces the contents of the list with every legal move for the side to move which is neither a capture nor a promotion
+	 */
+	public void generateLegalQuiets(MoveList moves) {
+		moves.clear();
+		MoveGenerator.generateLegalQuiets(board, currentTurn, castlingRights, moves);
+	}
+
+	/**
+	 * @return whether the move, typically taken from another position such as a killer or hash move, is legal here
+	 */
+	public boolean isLegal(int move) {
+		if (move == Move.NONE)
+			return false;
+
+		int from = Move.from(move);
+		if ((board.occupancy(currentTurn) & Bitboards.bit(from)) == 0)
+			return false;
+
+		legalityScratch.clear();
+		MoveGenerator.generateLegalMovesFrom(board, currentTurn, castlingRights, enPassantSquare, from, legalityScratch);
+		return legalityScratch.contains(move);
+	}
+}
@@ -0,0 +1,68 @@
+package ax.xz.max.chess;
+
+import static ax.xz.max.chess.PieceType.*;
+
+/**
+ * Static exchange evaluation: the material won by the sequence of captures a move starts on its destination square,
+ * with both sides recapturing with their least valuable attacker, and free to stop as soon as going on would lose material.
+ * <p>
+ * Nothing is moved: each capture only takes the attacker off an occupancy bitboard, and attackers are looked up again
+ * against it, so sliders lined up behind the pieces in front of them (x-rays) join in as those are used up.
+ * Pins are ignored, as are promotions by recapturing pawns.
+ */
+final class StaticExchange {
+	private static final PieceType[] LEAST_VALUABLE_FIRST = {PAWN, KNIGHT, BISHOP, ROOK, QUEEN, KING};
+
+	private StaticExchange() {}
+
+	/**
+	 * @param move a legal move on the board, packed as described in {@link Move}
+	 * @return the material the move wins in centipawns, once the exchange it starts is over; negative if it loses material
+	 */
+	static int see(BoardStateInternal board, int move) {
+		int from = Move.from(move);
+		int to = Move.to(move);
+		if (Move.flag(move) == Move.CASTLE) return 0;
+
+		Piece mover = board.get(from);
+		long occupancy = board.occupancy() & ~Bitboards.bit(from);
+		int gain;
+		if (Move.flag(move) == Move.EN_PASSANT) {
+			gain = PAWN.value();
+			occupancy &= ~Bitboards.bit(Bitboards.square(Bitboards.rankOf(from), Bitboards.fileOf(to)));
+		} else {
+			gain = board.isEmpty(to) ? 0 : board.get(to).type().value();
+		}
+
+		int onSquare = mover.type().value();
+		if (Move.isPromotion(move)) {
+			gain += Move.promotionType(move).value() - PAWN.value();
+			onSquare = Move.promotionType(move).value();
+		}
+
+		return gain - exchange(board, to, mover.owner().opponent(), occupancy, onSquare);
+	}
+
+	/**
+	 * @param side the player whose turn it is to recapture
+	 * @param occupancy the pieces still on the board
+	 * @param victim the value of the piece on the square
+	 * @return the material the side can win by recapturing, which is never negative, since it can decline
+	 */
+	private static int exchange(BoardStateInternal board, int square, Player side, long occupancy, int victim) {
+		long attackers = board.attackersTo(square, side, occupancy) & occupancy;
+		if (attackers == 0) return 0;
+
+		for (PieceType type : LEAST_VALUABLE_FIRST) {
+			long candidates = attackers & board.bitBoardFor(side, type);
+			if (candidates == 0) continue;
+
+			long remaining = occupancy & ~Bitboards.bit(Bitboards.firstSquare(candidates));
+			if (type == KING) // the king may only take a piece nobody can take back
+				return (board.attackersTo(square, side.opponent(), remaining) & remaining) == 0 ? victim : 0;
+
+			return Math.max(0, victim - exchange(board, square, side.opponent(), remaining, type.value()));
+		}
+		return 0;
+	}
+}
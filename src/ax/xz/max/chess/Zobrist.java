@@ -0,0 +1,71 @@
+package ax.xz.max.chess;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random keys for Zobrist hashing.
+ * The key of a position is the XOR of the keys of every feature present in it,
+ * so making a move only needs to XOR out the features that disappear and XOR in the ones that appear.
+ */
+public final class Zobrist {
+	private static final long[][] PIECE_SQUARE = new long[12][64]; // indexed by BoardStateInternal.indexOf
+	private static final long BLACK_TO_MOVE;
+	private static final long WHITE_SHORT_CASTLE;
+	private static final long WHITE_LONG_CASTLE;
+	private static final long BLACK_SHORT_CASTLE;
+	private static final long BLACK_LONG_CASTLE;
+	private static final long[] EN_PASSANT_FILE = new long[8];
+
+	static {
+		var random = new SplittableRandom(0x2AB0_B157L); // fixed seed, so keys are stable between runs
+		for (long[] squares : PIECE_SQUARE)
+			for (int square = 0; square < squares.length; square++)
+				squares[square] = random.nextLong();
+
+		BLACK_TO_MOVE = random.nextLong();
+		WHITE_SHORT_CASTLE = random.nextLong();
+		WHITE_LONG_CASTLE = random.nextLong();
+		BLACK_SHORT_CASTLE = random.nextLong();
+		BLACK_LONG_CASTLE = random.nextLong();
+
+		for (int file = 0; file < EN_PASSANT_FILE.length; file++)
+			EN_PASSANT_FILE[file] = random.nextLong();
+	}
+
+	private Zobrist() {}
+
+	/**
+	 * @param pieceIndex the index of the piece, as given by {@link BoardStateInternal#indexOf(Piece)}
+	 */
+	public static long piece(int pieceIndex, int square) {
+		return PIECE_SQUARE[pieceIndex][square];
+	}
+
+	public static long sideToMove(Player player) {
+		return player == Player.BLACK ? BLACK_TO_MOVE : 0;
+	}
+
+	public static long castling(boolean whiteShortCastle, boolean whiteLongCastle, boolean blackShortCastle, boolean blackLongCastle) {
+		long result = 0;
+		if (whiteShortCastle) result ^= WHITE_SHORT_CASTLE;
+		if (whiteLongCastle) result ^= WHITE_LONG_CASTLE;
+		if (blackShortCastle) result ^= BLACK_SHORT_CASTLE;
+		if (blackLongCastle) result ^= BLACK_LONG_CASTLE;
+		return result;
+	}
+
+	/**
+	 * @param rights the castling rights as a bit set: 1 = white short, 2 = white long, 4 = black short, 8 = black long
+	 */
+	public static long castling(int rights) {
+		return castling((rights & 1) != 0, (rights & 2) != 0, (rights & 4) != 0, (rights & 8) != 0);
+	}
+
+	public static long enPassantFile(int file) {
+		return EN_PASSANT_FILE[file];
+	}
+
+	public static long enPassant(BoardCoordinate target) {
+		return target == null ? 0 : EN_PASSANT_FILE[target.file()];
+	}
+}
@@ -1,144 +1,157 @@
 package ax.xz.max.chess.engine.choice;
 
-import ax.xz.max.chess.Board;
-import ax.xz.max.chess.GameState;
+import ax.xz.max.chess.*;
 import ax.xz.max.chess.engine.evaluators.BoardEvaluator;
-import ax.xz.max.chess.moves.*;
-
-import java.util.Comparator;
-import java.util.List;
+import ax.xz.max.chess.moves.PlayerMove;
 
+/**
+ * Single-threaded principal variation search, in negamax form: every score is in centipawns, from the point of view of the player to move.
+ */
 public record AlphaBetaSearch(
 		BoardEvaluator evaluator,
 		int depth
 ) implements MovePicker {
+	/** the width of the window which only tests whether a move beats alpha: one centipawn */
+	private static final int NULL_WINDOW = 1;
+
 	public AlphaBetaSearch {
 		if (depth <= 0)
 			throw new IllegalArgumentException("Search depth must be positive");
 	}
 	@Override
 	public PlayerMove chooseNextMove(Board board) {
-		SingleThreadedSearch search = new SingleThreadedSearch(board);
-		return switch (board.currentTurn()) {
-			case WHITE -> search.findMax();
-			case BLACK -> search.findMin();
-		};
+		return new SingleThreadedSearch(board).findBestMove();
 	}
 
 	private class SingleThreadedSearch {
-		private final Board board;
+		private final SearchPosition position;
+		private final SearchStack stack = SearchStack.forCurrentThread();
 
 		public SingleThreadedSearch(Board board) {
-			this.board = board.copy();
+			this.position = SearchPosition.of(board);
+			stack.setDeadline(Long.MAX_VALUE); // in case an earlier search on this thread had one
 		}
 
-		public double evaluate() {
-			return evaluator.evaluate(board);
+		/**
+		 * @return the evaluation of the position for the player to move
+		 */
+		public int evaluate() {
+			int score = evaluator.evaluateCentipawns(position);
+			return position.currentTurn() == Player.WHITE ? score : -score;
 		}
 
-		private List<PlayerMove> orderedLegalMoves() {
-			return board.getLegalMoves().stream()
-					.sorted(Comparator.comparingDouble(this::movePriority).reversed())
-					.toList();
+		/**
+		 * @return the score of a position with no legal moves, for the player to move: checkmate, which is worse the sooner it comes, or stalemate
+		 */
+		private int terminalScore() {
+			return position.isInCheck() ? -(BoardEvaluator.MATE - position.ply()) : 0;
 		}
 
-		private double movePriority(PlayerMove move) {
-			double result = 0;
-			double piecePriority = switch (move.piece().type()) {
-				case KNIGHT, BISHOP -> 10;
-				case ROOK, QUEEN -> 15;
-				case KING -> 5;
-				case PAWN -> 1;
-			};
-			result += piecePriority;
-			var record = new MoveRecord(board.boardState(), move);
-
-			if (record.isCheck()) {
-				result += 100; // ALWAYS LOOK FOR CHECKS
-			}
-
-			if (
-					record.isCapture()
-							|| move instanceof EnPassant
-							|| move instanceof Castle
-							|| move instanceof Promotion
-			) {
-				result += 50;
-			}
+		private MoveList legalMoves() {
+			var moves = stack.moves(position.ply());
+			position.generateLegalMoves(moves);
+			return moves;
+		}
 
-			return result;
+		/**
+		 * Sorts the moves, most promising first
+		 */
+		private void orderMoves(MoveList moves) {
+			MoveOrdering.orderMoves(position, stack, moves, Move.NONE);
 		}
 
-		public PlayerMove findMax() {
-			PlayerMove bestMove = null;
-			double alpha = Double.NEGATIVE_INFINITY;
-			double beta = Double.POSITIVE_INFINITY;
-			for (PlayerMove move : orderedLegalMoves()) {
-				var moveRecord = board.makeMove(move);
-				try {
-					double score = alphaBetaMin(alpha, beta, depth - 1);
-					if (score > alpha) {
-						alpha = score; // alpha acts like max
-						bestMove = move;
-					}
-				} finally {
-					board.unmakeMove(moveRecord);
+		public PlayerMove findBestMove() {
+			int bestMove = Move.NONE;
+			int alpha = -FasterAlphaBetaSearch.INFINITY;
+			int beta = FasterAlphaBetaSearch.INFINITY;
+			var moves = legalMoves();
+			orderMoves(moves);
+			for (int i = 0; i < moves.size(); i++) {
+				int move = moves.get(i);
+				int score = searchMove(move, i == 0, alpha, beta, depth);
+				if (score > alpha) {
+					alpha = score;
+					bestMove = move;
 				}
 			}
-			return bestMove;
+			return bestMove == Move.NONE ? null : position.toPlayerMove(bestMove);
 		}
 
-		public PlayerMove findMin() {
-			PlayerMove bestMove = null;
-			double alpha = Double.NEGATIVE_INFINITY;
-			double beta = Double.POSITIVE_INFINITY;
-			for (PlayerMove move : orderedLegalMoves()) {
-				var moveRecord = board.makeMove(move);
-				try {
-					double score = alphaBetaMax(alpha, beta, depth - 1);
-					if (score < beta) {
-						beta = score; // beta acts like min
-						bestMove = move;
-					}
-				} finally {
-					board.unmakeMove(moveRecord);
-				}
+		/**
+		 * Searches the first move with the full window, and each later one with a null window, which only proves
+		 * it is no better than alpha. Only a move which fails that test is searched again with the full window.
+		 * @return the score of the move, for the player making it
+		 */
+		private int searchMove(int move, boolean first, int alpha, int beta, int depthRemaining) {
+			position.make(move);
+			try {
+				if (first)
+					return -negamax(-beta, -alpha, depthRemaining - 1);
+
+				int score = -negamax(-alpha - NULL_WINDOW, -alpha, depthRemaining - 1);
+				if (score > alpha && score < beta)
+					score = -negamax(-beta, -alpha, depthRemaining - 1);
+				return score;
+			} finally {
+				position.unmake();
 			}
-			return bestMove;
 		}
 
-		private double alphaBetaMax(double alpha, double beta, int depthRemaining) {
-			if (depthRemaining == 0 || board.gameState() != GameState.UNFINISHED) return evaluate();
-			for (PlayerMove move : orderedLegalMoves()) {
-				var moveRecord = board.makeMove(move);
-				try {
-					double score = alphaBetaMin(alpha, beta, depthRemaining - 1);
-					if (score >= beta)
-						return beta; // hard beta cutoff
-					if (score > alpha)
-						alpha = score; // alpha acts like max
-				} finally {
-					board.unmakeMove(moveRecord);
+		private int negamax(int alpha, int beta, int depthRemaining) {
+			stack.countNode();
+			if (position.isDraw()) return 0;
+			if (depthRemaining == 0) return quiescence(alpha, beta);
+
+			var moves = legalMoves();
+			if (moves.isEmpty()) return terminalScore();
+			orderMoves(moves);
+
+			for (int i = 0; i < moves.size(); i++) {
+				int move = moves.get(i);
+				int score = searchMove(move, i == 0, alpha, beta, depthRemaining);
+				if (score >= beta) {
+					MoveOrdering.recordCutoff(position, stack, move, depthRemaining);
+					return beta; // hard beta cutoff
 				}
+				if (score > alpha)
+					alpha = score;
 			}
 			return alpha;
 		}
+	
+		/**
+		 * Searches captures and promotions until the position is quiet, standing pat on the evaluation unless in check
+		 */
+		private int quiescence(int alpha, int beta) {
+			stack.countNode();
+			if (position.isDraw()) return 0;
+			if (position.ply() >= SearchPosition.MAX_PLY - 1) return evaluate();
+
+			var moves = stack.moves(position.ply());
+			boolean inCheck = position.isInCheck();
+			if (inCheck) {
+				position.generateLegalMoves(moves);
+				if (moves.isEmpty()) return terminalScore();
+			} else {
+				int standPat = evaluate();
+				if (standPat >= beta) return beta;
+				if (standPat > alpha) alpha = standPat;
+				position.generateLegalCaptures(moves);
+			}
+			MoveOrdering.orderCaptures(position, moves);
 
-		private double alphaBetaMin(double alpha, double beta, int depthRemaining) {
-			if (depthRemaining == 0 || board.gameState() != GameState.UNFINISHED) return evaluate();
-			for (PlayerMove move : orderedLegalMoves()) {
-				var moveRecord = board.makeMove(move);
+			for (int i = 0; i < moves.size(); i++) {
+				int score;
+				position.make(moves.get(i));
 				try {
-					double score = alphaBetaMax(alpha, beta, depthRemaining - 1);
-					if (score <= alpha)
-						return alpha; // hard alpha cutoff
-					if (score < beta)
-						beta = score; // beta acts like min
+					score = -quiescence(-beta, -alpha);
 				} finally {
-					board.unmakeMove(moveRecord);
+					position.unmake();
 				}
+				if (score >= beta) return beta;
+				if (score > alpha) alpha = score;
 			}
-			return beta;
+			return alpha;
 		}
 	}
 }
@@ -1,281 +1,889 @@
 package ax.xz.max.chess.engine.choice;
 
-import ax.xz.max.chess.Board;
-import ax.xz.max.chess.GameState;
+import ax.xz.max.chess.*;
 import ax.xz.max.chess.engine.evaluators.BoardEvaluator;
-import ax.xz.max.chess.moves.*;
-
-import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.StructuredTaskScope;
-import java.util.concurrent.atomic.AtomicReference;
-
+import ax.xz.max.chess.moves.PlayerMove;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Multithreaded principal variation search, splitting the work between threads as chosen by its {@link Parallelism}.
+ * The threads share one transposition table, which is kept between calls to {@link #chooseNextMove(Board)}.
+ * <p>
+ * The search is negamax: every score is from the point of view of the player to move in the position it belongs to,
+ * including the scores stored in the transposition table. Scores are in whole centipawns, so that windows and
+ * transposition table bounds compare exactly.
+ */
 public record FasterAlphaBetaSearch(
 		BoardEvaluator evaluator,
-		int depth
+		int depth,
+		TranspositionTable transpositionTable,
+		Parallelism parallelism,
+		SearchThreads threads
 ) implements MovePicker {
+	private static final int DEFAULT_TABLE_MEGABYTES = 32;
+
+	public enum Parallelism {
+		/** shares the root moves between this thread and its {@link SearchThreads}, each taking the next move nobody has taken, and searches each with the full window */
+		ROOT_SPLIT,
+		/**
+		 * shares the root moves between threads like {@link #ROOT_SPLIT}, but publishes each root move's score
+		 * in a {@link RootWindow} as soon as it is known. Every node of the other threads' subtrees narrows its window to it.
+		 */
+		SHARED_BOUND,
+		/**
+		 * searches the whole tree on this thread, while each of its {@link SearchThreads} searches the same root
+		 * alongside it, alternately one ply deeper. The helpers' results are discarded; they only fill the
+		 * transposition table, which cuts short the main search whenever it reaches a position a helper has finished.
+		 */
+		LAZY_SMP,
+		/**
+		 * splits the work at every node with enough depth left: the eldest child is searched first to narrow the window,
+		 * then its younger brothers are searched in parallel on the common {@link ForkJoinPool}, and abandoned if one of them causes a cutoff
+		 */
+		YOUNG_BROTHERS_WAIT
+	}
+
+	/** a bound beyond every score, mates included */
+	static final int INFINITY = BoardEvaluator.MATE + 1;
+
+	/** what {@link #storedScore} returns when the transposition table does not decide a node; never a real score */
+	private static final int NO_SCORE = Integer.MIN_VALUE;
+
+	/** nodes with less depth left than this are searched serially, since forking them would cost more than it saves */
+	private static final int MIN_SPLIT_DEPTH = 3;
+
+	/** the width of the window which only tests whether a move beats alpha: one centipawn */
+	private static final int NULL_WINDOW = 1;
+
+	/** how far a capture may fall short of alpha, beyond the value of what it takes, and still be searched: two pawns */
+	private static final int DELTA_MARGIN = 200;
+
+	/** null-move pruning is only tried with at least this much depth left */
+	private static final int NULL_MOVE_MIN_DEPTH = 3;
+
+	/** with at least this much depth left, a null-move cutoff is only trusted once a reduced search without null moves confirms it */
+	private static final int NULL_MOVE_VERIFICATION_DEPTH = 6;
+
+	/** late move reductions are only made with at least this much depth left, and from this move on */
+	private static final int LATE_MOVE_MIN_DEPTH = 3;
+	private static final int LATE_MOVE_MIN_INDEX = 3;
+
+	/** how many plies to reduce a late move by, indexed by [depth left][index of the move in the ordered list] */
+	private static final int[][] LATE_MOVE_REDUCTIONS = new int[64][64];
+
+	static {
+		for (int depth = 1; depth < 64; depth++) {
+			for (int index = 1; index < 64; index++)
+				LATE_MOVE_REDUCTIONS[depth][index] = (int) (0.75 + Math.log(depth) * Math.log(index) / 2.25);
+		}
+	}
+
+	/** how far below alpha the evaluation must be, by depth left, for quiet moves to be skipped: one pawn a ply from the horizon, two pawns at two */
+	private static final int[] FUTILITY_MARGINS = {0, 100, 200};
+
+	/** how far below alpha the evaluation must be, by depth left, for the node to be razored: dropped into quiescence search */
+	private static final int[] RAZOR_MARGINS = {0, 200, 300, 400};
+
+	/** how far either side of the previous depth's score the root window starts */
+	private static final int ASPIRATION_WINDOW = 25;
+
 	public FasterAlphaBetaSearch {
 		if (depth <= 0)
 			throw new IllegalArgumentException("Search depth must be positive");
 	}
 
+	/**
+	 * Searches with the {@link SearchThreads#shared() shared} threads
+	 */
+	public FasterAlphaBetaSearch(BoardEvaluator evaluator, int depth, TranspositionTable transpositionTable, Parallelism parallelism) {
+		this(evaluator, depth, transpositionTable, parallelism, SearchThreads.shared());
+	}
+
+	public FasterAlphaBetaSearch(BoardEvaluator evaluator, int depth, TranspositionTable transpositionTable) {
+		this(evaluator, depth, transpositionTable, Parallelism.ROOT_SPLIT);
+	}
+
+	public FasterAlphaBetaSearch(BoardEvaluator evaluator, int depth) {
+		this(evaluator, depth, new TranspositionTable(DEFAULT_TABLE_MEGABYTES));
+	}
+
 	@Override
 	public PlayerMove chooseNextMove(Board board) {
 		try {
-			return switch (board.currentTurn()) {
-				case WHITE -> findMax(board);
-				case BLACK -> findMin(board);
-			};
+			transpositionTable.newSearch();
+			var position = SearchPosition.of(board);
+			int bestMove = bestMove(position, Long.MAX_VALUE);
+			return bestMove == Move.NONE ? null : position.toPlayerMove(bestMove);
 		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	private double evaluate(Board board) {
-		return evaluator.evaluate(board);
-	}
+	/**
+	 * Finds the best few moves of the position, each with its exact score and principal variation, in one search to this search's depth.
+	 * Once that many moves have been searched, each later one is only tested against the worst of them, and only searched
+	 * with a full window if it beats it, so the other moves are pruned much as they are when looking for the best move alone.
+	 * <p>
+	 * Searched on the calling thread, at depth 1, 2, 3, ... up to this search's depth, each ordering the root moves by the scores of the one before.
+	 *
+	 * @param lines how many moves to find
+	 * @return the best moves' lines, best first: as many as were asked for, or one per legal move if there are fewer
+	 */
+	public List<PrincipalVariation> analyse(Board board, int lines) {
+		if (lines <= 0)
+			throw new IllegalArgumentException("Must analyse at least one line");
+
+		transpositionTable.newSearch();
+		var position = SearchPosition.of(board);
+		var stack = SearchStack.forCurrentThread();
+		stack.setDeadline(Long.MAX_VALUE);
+		stack.setRootWindow(null);
+
+		var moves = orderedRootMoves(position);
+		int count = Math.min(lines, moves.size());
+		int[] bestMoves = new int[count];
+		int[] bestScores = new int[count];
+		for (int depth = 1; depth <= this.depth; depth++) {
+			searchLines(position, stack, depth, moves, bestMoves, bestScores);
+			promote(moves, bestMoves);
+		}
 
-	private Collection<PlayerMove> orderedLegalMoves(Board board) {
-//		return board.getLegalMoves();
-		return board.getLegalMoves().stream()
-				.sorted(Comparator.<PlayerMove>comparingDouble(move -> movePriority(board, move)).reversed())
-				.toList();
+		var result = new ArrayList<PrincipalVariation>(count);
+		for (int i = 0; i < count; i++)
+			result.add(new PrincipalVariation(principalVariation(transpositionTable, position, bestMoves[i], depth), bestScores[i]));
+		return result;
 	}
 
-	private double movePriority(Board board, PlayerMove move) {
-		double result = 0;
-		double piecePriority = switch (move.piece().type()) {
-			case KNIGHT, BISHOP -> 10;
-			case ROOK, QUEEN -> 15;
-			case KING -> 5;
-			case PAWN -> 1;
-		};
-		result += piecePriority;
-		var record = new MoveRecord(board.boardState(), move);
+	/**
+	 * Searches the root moves one after another, keeping the best of them in score order, and records the best in the transposition table
+	 * @param bestMoves filled with the best moves, as many as it has room for
+	 * @param bestScores filled with the exact scores of those moves
+	 */
+	private void searchLines(SearchPosition position, SearchStack stack, int depth, MoveList moves, int[] bestMoves, int[] bestScores) {
+		int lines = bestMoves.length;
+		int found = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			int score;
+			if (found < lines) {
+				score = searchMove(position, stack, move, true, 0, -INFINITY, INFINITY, depth);
+			} else {
+				// only exact if it beats the worst line kept so far, which is then dropped
+				score = searchMove(position, stack, move, false, 0, bestScores[lines - 1], INFINITY, depth);
+				if (score <= bestScores[lines - 1]) continue;
+				found--;
+			}
 
-		if (record.isCheck()) {
-			result += 100; // ALWAYS LOOK FOR CHECKS
+			int slot = found++;
+			for (; slot > 0 && bestScores[slot - 1] < score; slot--) {
+				bestMoves[slot] = bestMoves[slot - 1];
+				bestScores[slot] = bestScores[slot - 1];
+			}
+			bestMoves[slot] = move;
+			bestScores[slot] = score;
 		}
 
-		if (
-				record.isCapture()
-						|| move instanceof EnPassant
-						|| move instanceof Castle
-						|| move instanceof Promotion
-		) {
-			result += 50;
+		if (lines > 0) // so that the next, deeper search tries this move first
+			store(position, depth, TranspositionTable.EXACT, bestScores[0], bestMoves[0]);
+	}
+
+	/**
+	 * Moves the best moves, in order, to the front of the list, keeping the order of the rest
+	 */
+	private static void promote(MoveList moves, int[] bestMoves) {
+		int write = moves.size() - 1;
+		for (int i = moves.size() - 1; i >= 0; i--) { // the rest, from the back, so that nothing is overwritten before it is read
+			int move = moves.get(i);
+			boolean best = false;
+			for (int bestMove : bestMoves)
+				best |= move == bestMove;
+			if (!best)
+				moves.set(write--, move);
 		}
+		for (int i = 0; i < bestMoves.length; i++)
+			moves.set(i, bestMoves[i]);
+	}
 
+	/**
+	 * Follows the best moves stored in the transposition table from the root move, for as long as they are legal and the line has not repeated
+	 * @param maxLength the most moves to follow
+	 */
+	static List<PlayerMove> principalVariation(TranspositionTable transpositionTable, SearchPosition position, int rootMove, int maxLength) {
+		var result = new ArrayList<PlayerMove>();
+		int made = 0;
+		try {
+			for (int move = rootMove; move != Move.NONE && made < maxLength && position.isLegal(move);
+				 move = TranspositionTable.bestMove(transpositionTable.probe(position.zobristKey()))) {
+				result.add(position.toPlayerMove(move));
+				position.make(move);
+				made++;
+				if (position.isDraw()) break;
+			}
+		} finally {
+			for (; made > 0; made--)
+				position.unmake();
+		}
 		return result;
 	}
 
-	public PlayerMove findMax(Board board) throws InterruptedException {
-		Map<PlayerMove, Double> moveScores = new HashMap<>();
+	/**
+	 * Searches the position to this search's depth, and records the result in the transposition table
+	 *
+	 * @param deadline the {@link System#nanoTime()} at which to give up, or {@link Long#MAX_VALUE} to never give up
+	 * @return the best move, packed as described in {@link Move}, or {@link Move#NONE} if there are no legal moves
+	 * @throws SearchAbortedException if the deadline passes before the search completes
+	 */
+	int bestMove(SearchPosition position, long deadline) throws InterruptedException {
+		return switch (parallelism) {
+			case ROOT_SPLIT -> rootSplitSearch(position, deadline);
+			case SHARED_BOUND -> sharedBoundSearch(position, deadline);
+			case LAZY_SMP -> lazySmpSearch(position, deadline);
+			case YOUNG_BROTHERS_WAIT -> {
+				var root = new YoungBrothersTask(position, -INFINITY, INFINITY, depth, null, deadline);
+				ForkJoinPool.commonPool().invoke(root);
+				yield root.bestMove;
+			}
+		};
+	}
 
-		var alpha = Double.NEGATIVE_INFINITY;
-		var beta = Double.POSITIVE_INFINITY;
+	/**
+	 * @return the evaluation of the position for the player to move
+	 */
+	private int evaluate(SearchPosition position) {
+		int score = evaluator.evaluateCentipawns(position);
+		return position.currentTurn() == Player.WHITE ? score : -score;
+	}
 
-		try (var scope = new StructuredTaskScope.ShutdownOnFailure("Find Max", Thread.ofPlatform().factory())) { // platform threads
-			var moveTasks = new HashMap<PlayerMove, StructuredTaskScope.Subtask<Double>>();
+	/**
+	 * @return the score of a position with no legal moves, for the player to move: checkmate, which is worse the sooner it comes, or stalemate
+	 */
+	private static int terminalScore(SearchPosition position) {
+		return position.isInCheck() ? -(BoardEvaluator.MATE - position.ply()) : 0;
+	}
 
-			for (PlayerMove move : orderedLegalMoves(board)) {
-				var copy = board.copy();
-				copy.makeMove(move);
+	/**
+	 * Records the result of searching the position in the transposition table
+	 */
+	private void store(SearchPosition position, int depthRemaining, int bound, int score, int bestMove) {
+		transpositionTable.store(position.zobristKey(), depthRemaining, bound, toTableScore(score, position.ply()), bestMove);
+	}
 
-				moveTasks.put(move, scope.fork(() -> alphaBetaMin(copy, alpha, beta, depth - 1)));
-			}
+	/**
+	 * Mate scores count plies from the root, but a position can be reached at different plies, so the table counts them from the position itself instead
+	 * @param ply the ply of the position the score belongs to
+	 */
+	private static int toTableScore(int score, int ply) {
+		if (score > BoardEvaluator.MAX_EVALUATION) return score + ply;
+		if (score < -BoardEvaluator.MAX_EVALUATION) return score - ply;
+		return score;
+	}
+
+	/**
+	 * The inverse of {@link #toTableScore(int, int)}
+	 */
+	private static int fromTableScore(int score, int ply) {
+		if (score > BoardEvaluator.MAX_EVALUATION) return score - ply;
+		if (score < -BoardEvaluator.MAX_EVALUATION) return score + ply;
+		return score;
+	}
 
-			scope.join();
-			scope.throwIfFailed();
+	/**
+	 * @param ply the ply of the position the entry belongs to
+	 * @return the score to return from a node without searching it, or {@link #NO_SCORE} if the stored result does not decide it
+	 */
+	private static int storedScore(long entry, int ply, int alpha, int beta, int depthRemaining) {
+		if (entry == 0 || TranspositionTable.depth(entry) < depthRemaining)
+			return NO_SCORE;
+
+		int score = fromTableScore(TranspositionTable.score(entry), ply);
+		return switch (TranspositionTable.bound(entry)) {
+			case TranspositionTable.EXACT -> score;
+			case TranspositionTable.LOWER_BOUND -> score >= beta ? beta : NO_SCORE;
+			case TranspositionTable.UPPER_BOUND -> score <= alpha ? alpha : NO_SCORE;
+			default -> NO_SCORE;
+		};
+	}
 
-			moveTasks.forEach((move, task) -> moveScores.put(move, task.get()));
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e);
+	/**
+	 * Searches the root moves on this thread and each of the {@link #threads}, each with its own copy of the position,
+	 * every thread taking the next move nobody has taken until none are left
+	 * @return the scores of the moves for the root player, in the same order
+	 */
+	private int[] scoreRootMoves(SearchPosition position, MoveList moves, long deadline, RootWindow rootWindow, SubtreeSearch search) throws InterruptedException {
+		int[] scores = new int[moves.size()];
+		var nextMove = new AtomicInteger();
+
+		var copies = new SearchPosition[threads.size() + 1];
+		for (int i = 0; i < copies.length; i++)
+			copies[i] = position.copy();
+
+		IntConsumer worker = index -> {
+			var stack = SearchStack.forCurrentThread();
+			stack.setDeadline(deadline);
+			stack.setRootWindow(rootWindow);
+
+			var copy = copies[index];
+			for (int i; (i = nextMove.getAndIncrement()) < moves.size(); ) {
+				copy.make(moves.get(i));
+				try {
+					scores[i] = search.score(copy, stack); // each move is scored by one thread, and read after they have all finished
+				} finally {
+					copy.unmake();
+				}
+			}
+		};
+
+		var workers = threads.start(worker);
+		try {
+			worker.accept(threads.size()); // this thread takes moves too
+			workers.join();
+		} finally {
+			workers.stop(); // only does anything if this thread failed first
+			SearchStack.forCurrentThread().setRootWindow(null);
 		}
+		return scores;
+	}
+
+	private interface SubtreeSearch {
+		int score(SearchPosition position, SearchStack stack);
+	}
 
+	private MoveList orderedRootMoves(SearchPosition position) {
+		var moves = new MoveList();
+		position.generateLegalMoves(moves);
+		MoveOrdering.orderMoves(position, SearchStack.forCurrentThread(), moves, TranspositionTable.bestMove(transpositionTable.probe(position.zobristKey())));
+		return moves;
+	}
 
-		PlayerMove bestMove = null;
-		double bestScore = Double.NEGATIVE_INFINITY;
-		for (var entry : moveScores.entrySet()) {
-			if (entry.getValue() > bestScore) {
-				bestScore = entry.getValue();
-				bestMove = entry.getKey();
+	/**
+	 * @return the move with the highest score
+	 */
+	private int pickRootMove(SearchPosition position, MoveList moves, int[] scores) {
+		int bestMove = Move.NONE;
+		int bestScore = -INFINITY;
+		for (int i = 0; i < moves.size(); i++) {
+			if (scores[i] > bestScore) {
+				bestScore = scores[i];
+				bestMove = moves.get(i);
 			}
 		}
+
+		if (bestMove != Move.NONE) // so that the next, deeper search tries this move first
+			store(position, depth, TranspositionTable.EXACT, bestScore, bestMove);
 		return bestMove;
 	}
 
-	public PlayerMove findMin(Board board) throws InterruptedException {
-		Map<PlayerMove, Double> moveScores = new HashMap<>();
+	private int rootSplitSearch(SearchPosition position, long deadline) throws InterruptedException {
+		var moves = orderedRootMoves(position);
+		int[] scores = scoreRootMoves(position, moves, deadline, null,
+				(copy, stack) -> -negamax(copy, stack, -INFINITY, INFINITY, depth - 1));
+		return pickRootMove(position, moves, scores);
+	}
+
+	/**
+	 * Shares the root moves between threads, publishing scores through a shared {@link RootWindow}.
+	 * A thread whose subtree was pruned against the shared bound only returns a bound, not the score of its move,
+	 * so only the moves which raised the bound when they finished are candidates.
+	 */
+	private int sharedBoundSearch(SearchPosition position, long deadline) throws InterruptedException {
+		var rootWindow = new RootWindow(position.currentTurn());
+
+		var moves = orderedRootMoves(position);
+		int[] scores = scoreRootMoves(position, moves, deadline, rootWindow, (copy, stack) -> {
+			int score = -negamax(copy, stack, -INFINITY, -rootWindow.alpha(), depth - 1);
+			return rootWindow.raiseAlpha(score) ? score : -INFINITY;
+		});
+		return pickRootMove(position, moves, scores);
+	}
+
+	/**
+	 * Searches the root on this thread while the helper {@link #threads} search copies of it, and stops the helpers once this thread is done
+	 */
+	private int lazySmpSearch(SearchPosition position, long deadline) throws InterruptedException {
+		var copies = new SearchPosition[threads.size()];
+		for (int i = 0; i < copies.length; i++)
+			copies[i] = position.copy(); // before this thread starts changing the position
+
+		var helpers = threads.start(index -> {
+			var stack = SearchStack.forCurrentThread();
+			stack.setDeadline(deadline);
+			stack.setRootWindow(null); // the thread may have searched with one before
+			aspirationSearch(copies[index], stack, index % 2 == 0 ? depth + 1 : depth);
+		});
 
-		var alpha = Double.NEGATIVE_INFINITY;
-		var beta = Double.POSITIVE_INFINITY; // should be shared
+		try {
+			var stack = SearchStack.forCurrentThread();
+			stack.setDeadline(deadline);
+			stack.setRootWindow(null);
+			return aspirationSearch(position, stack, depth);
+		} finally {
+			helpers.stop(); // interrupts the helpers, which then abort
+		}
+	}
 
-		try (var scope = new StructuredTaskScope.ShutdownOnFailure("Find Min", Thread.ofPlatform().factory())) { // platform threads
-			var moveTasks = new HashMap<PlayerMove, StructuredTaskScope.Subtask<Double>>();
+	/**
+	 * Searches the root with a narrow window around the score of the previous, shallower search,
+	 * opening the window on whichever side the score falls outside it and searching again
+	 * @return the best move, or {@link Move#NONE} if there are no legal moves
+	 */
+	private int aspirationSearch(SearchPosition position, SearchStack stack, int depth) {
+		int alpha = -INFINITY;
+		int beta = INFINITY;
+
+		long entry = transpositionTable.probe(position.zobristKey());
+		if (entry != 0 && TranspositionTable.bound(entry) == TranspositionTable.EXACT && TranspositionTable.depth(entry) >= depth - 1) {
+			int previous = fromTableScore(TranspositionTable.score(entry), position.ply());
+			alpha = previous - ASPIRATION_WINDOW;
+			beta = previous + ASPIRATION_WINDOW;
+		}
 
-			for (PlayerMove move : orderedLegalMoves(board)) {
-				var copy = board.copy();
-				copy.makeMove(move);
+		while (true) {
+			var result = searchRoot(position, stack, depth, alpha, beta);
+			if (result.score() <= alpha && alpha != -INFINITY)
+				alpha = -INFINITY;
+			else if (result.score() >= beta && beta != INFINITY)
+				beta = INFINITY;
+			else
+				return result.move();
+		}
+	}
 
-				moveTasks.put(move, scope.fork(() -> alphaBetaMax(copy, alpha, beta, depth - 1)));
+	/**
+	 * @param move the best move, or {@link Move#NONE} if none of them beat alpha
+	 * @param score the score of the best move, or the bound it failed against
+	 */
+	private record RootResult(int move, int score) {}
+
+	/**
+	 * Searches the root moves one after another on the current thread, and records the result in the transposition table
+	 */
+	private RootResult searchRoot(SearchPosition position, SearchStack stack, int depth, int alpha, int beta) {
+		var moves = orderedRootMoves(position);
+		if (moves.isEmpty())
+			return new RootResult(Move.NONE, terminalScore(position));
+
+		int bestMove = Move.NONE;
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			int score = searchMove(position, stack, move, i == 0, 0, alpha, beta, depth);
+			if (score >= beta) {
+				MoveOrdering.recordCutoff(position, stack, move, depth);
+				store(position, depth, TranspositionTable.LOWER_BOUND, beta, move);
+				return new RootResult(move, beta);
 			}
+			if (score > alpha) {
+				alpha = score;
+				bestMove = move;
+			}
+		}
 
-			scope.join();
-			scope.throwIfFailed();
+		if (bestMove != Move.NONE) // so that the next, deeper search tries this move first
+			store(position, depth, TranspositionTable.EXACT, alpha, bestMove);
+		return new RootResult(bestMove, alpha);
+	}
 
-			moveTasks.forEach((move, task) -> moveScores.put(move, task.get()));
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e);
+	/**
+	 * Searches a move with principal variation search: the first move with the full window, and each later one
+	 * with a null window, which only proves it is no better than alpha. Only a move which fails that test is searched again with the full window.
+	 * @param reduction how many plies less to search the move for its null window test, unless it gives check
+	 * @param depthRemaining the depth left at the node the move is made from
+	 * @return the score of the move, for the player making it
+	 */
+	private int searchMove(SearchPosition position, SearchStack stack, int move, boolean first, int reduction, int alpha, int beta, int depthRemaining) {
+		return searchMove(position, stack, move, first, reduction, alpha, beta, depthRemaining, true);
+	}
+
+	/**
+	 * @param allowNullMove whether the move's subtree may try null-move pruning; false below a null-move verification
+	 */
+	private int searchMove(SearchPosition position, SearchStack stack, int move, boolean first, int reduction, int alpha, int beta, int depthRemaining, boolean allowNullMove) {
+		position.make(move);
+		try {
+			if (first)
+				return -negamax(position, stack, -beta, -alpha, depthRemaining - 1, allowNullMove);
+
+			if (reduction > 0 && position.isInCheck())
+				reduction = 0;
+			int score = -negamax(position, stack, -alpha - NULL_WINDOW, -alpha, depthRemaining - 1 - reduction, allowNullMove);
+			if (score > alpha && reduction > 0) // it might not be so bad after all: test it again at full depth
+				score = -negamax(position, stack, -alpha - NULL_WINDOW, -alpha, depthRemaining - 1, allowNullMove);
+			if (score > alpha && score < beta)
+				score = -negamax(position, stack, -beta, -alpha, depthRemaining - 1, allowNullMove);
+			return score;
+		} finally {
+			position.unmake();
+		}
+	}
+
+	/**
+	 * Searches one node, splitting its children between the pool's threads if enough depth is left.
+	 * Each forked child gets its own copy of the position, and its own {@link MoveList}, since the thread which
+	 * joins it may run other tasks, which reuse the thread's {@link SearchStack}, while it waits.
+	 */
+	@SuppressWarnings("serial") // never serialized: it only lives for one search
+	private final class YoungBrothersTask extends RecursiveAction {
+		private final SearchPosition position;
+		private final int alpha;
+		private final int beta;
+		private final int depthRemaining;
+		private final YoungBrothersTask parent; // null at the root
+		private final long deadline;
+
+		private volatile boolean aborted;
+		private int bestMove = Move.NONE;
+		private int result; // the score, once the task is done
+
+		YoungBrothersTask(SearchPosition position, int alpha, int beta, int depthRemaining, YoungBrothersTask parent, long deadline) {
+			this.position = position;
+			this.alpha = alpha;
+			this.beta = beta;
+			this.depthRemaining = depthRemaining;
+			this.parent = parent;
+			this.deadline = deadline;
 		}
 
-		PlayerMove bestMove = null;
-		double bestScore = Double.POSITIVE_INFINITY;
-		for (var entry : moveScores.entrySet()) {
-			if (entry.getValue() < bestScore) {
-				bestScore = entry.getValue();
-				bestMove = entry.getKey();
+		/**
+		 * @return whether this task, or any of its ancestors, has been cut off, so that its result no longer matters
+		 */
+		private boolean isAborted() {
+			for (var task = this; task != null; task = task.parent) {
+				if (task.aborted) return true;
 			}
+			return false;
 		}
-		return bestMove;
-	}
 
-	private PlayerMove concurrentFindMax(Board board) throws InterruptedException {
-		Map<PlayerMove, Double> moveScores = new HashMap<>();
+		@Override
+		protected void compute() {
+			result = search();
+		}
 
-		var alpha = new AtomicReference<>(Double.NEGATIVE_INFINITY); // should be shared
-		var beta = Double.POSITIVE_INFINITY;
+		private int search() {
+			var stack = SearchStack.forCurrentThread();
+			stack.setDeadline(deadline);
 
-		try (var scope = new StructuredTaskScope.ShutdownOnFailure("Find Max", Thread.ofPlatform().factory())) { // platform threads
-			var moveTasks = new HashMap<PlayerMove, StructuredTaskScope.Subtask<Double>>();
+			if (parent != null && depthRemaining < MIN_SPLIT_DEPTH)
+				return negamax(position, stack, alpha, beta, depthRemaining);
 
-			for (PlayerMove move : orderedLegalMoves(board)) {
-				var copy = board.copy();
-				copy.makeMove(move);
+			stack.countNode();
+			long entry = transpositionTable.probe(position.zobristKey());
+			if (parent != null) { // the root must search, to find a move
+				if (isAborted()) return 0; // the parent ignores the result
+				if (position.isDraw()) return 0;
+				int stored = storedScore(entry, position.ply(), alpha, beta, depthRemaining);
+				if (stored != NO_SCORE) return stored;
+			}
 
-				moveTasks.put(move, scope.fork(() -> concurrentAlphaBetaMin(copy, alpha, beta, depth - 1)));
+			var moves = new MoveList();
+			position.generateLegalMoves(moves);
+			if (moves.isEmpty()) return terminalScore(position);
+			MoveOrdering.orderMoves(position, stack, moves, TranspositionTable.bestMove(entry));
+
+			int alpha = this.alpha;
+
+			// the eldest brother, on this thread
+			int eldest = moves.get(0);
+			int eldestScore;
+			position.make(eldest);
+			try {
+				eldestScore = -new YoungBrothersTask(position, -beta, -alpha, depthRemaining - 1, this, deadline).search();
+			} finally {
+				position.unmake();
 			}
+			if (isAborted()) return 0;
 
-			scope.join();
-			scope.throwIfFailed();
+			if (eldestScore >= beta)
+				return cutoff(eldest);
+			if (eldestScore > alpha) {
+				alpha = eldestScore;
+				bestMove = eldest;
+			}
 
-			moveTasks.forEach((move, task) -> moveScores.put(move, task.get()));
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e);
-		}
+			// the younger brothers, in parallel, each only testing whether it beats the eldest
+			int forkedAlpha = alpha;
+			var brothers = new ArrayList<YoungBrothersTask>(moves.size() - 1);
+			for (int i = 1; i < moves.size(); i++) {
+				var copy = position.copy();
+				copy.make(moves.get(i));
+				var brother = new YoungBrothersTask(copy, -forkedAlpha - NULL_WINDOW, -forkedAlpha, depthRemaining - 1, this, deadline);
+				brother.fork();
+				brothers.add(brother);
+			}
 
+			try {
+				for (int i = 0; i < brothers.size(); i++) {
+					var brother = brothers.get(i);
+					brother.join();
+					int score = -brother.result;
+					if (isAborted()) return 0;
+
+					if (score > forkedAlpha && score < beta) // it might beat alpha: search it properly, on this thread
+						score = -new YoungBrothersTask(brother.position, -beta, -alpha, depthRemaining - 1, this, deadline).search();
+					if (isAborted()) return 0;
+
+					int move = moves.get(i + 1);
+					if (score >= beta)
+						return cutoff(move);
+					if (score > alpha) {
+						alpha = score;
+						bestMove = move;
+					}
+				}
+			} finally {
+				abandon(brothers);
+			}
+
+			store(position, depthRemaining, alpha > this.alpha ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND, alpha, bestMove);
+			return alpha;
+		}
 
-		PlayerMove bestMove = null;
-		double bestScore = Double.NEGATIVE_INFINITY;
-		for (var entry : moveScores.entrySet()) {
-			if (entry.getValue() > bestScore) {
-				bestScore = entry.getValue();
-				bestMove = entry.getKey();
+		/**
+		 * Stops the brothers whose results are no longer needed, and waits for them, so that none is still writing to the
+		 * transposition table, or using its thread's {@link SearchStack}, once the search has returned.
+		 * Those not yet started are cancelled. Those already running notice they are aborted at their next split node;
+		 * below the split depth, what is left of their subtree is too shallow to be worth checking more often.
+		 */
+		private static void abandon(List<YoungBrothersTask> brothers) {
+			for (var brother : brothers) {
+				brother.aborted = true;
+				brother.cancel(false);
 			}
+			for (var brother : brothers)
+				brother.quietlyJoin();
 		}
-		return bestMove;
-	}
 
-	private PlayerMove concurrentFindMin(Board board) throws InterruptedException {
-		Map<PlayerMove, Double> moveScores = new HashMap<>();
+		private int cutoff(int move) {
+			MoveOrdering.recordCutoff(position, SearchStack.forCurrentThread(), move, depthRemaining);
+			bestMove = move;
+			store(position, depthRemaining, TranspositionTable.LOWER_BOUND, beta, move);
+			return beta;
+		}
+	}
 
-		var alpha = Double.NEGATIVE_INFINITY;
-		var beta = new AtomicReference<>(Double.POSITIVE_INFINITY); // should be shared
+	/**
+	 * Fail-hard principal variation search of one node
+	 * @return the score of the position for the player to move, clamped to the window
+	 */
+	private int negamax(SearchPosition position, SearchStack stack, int alpha, int beta, int depthRemaining) {
+		return negamax(position, stack, alpha, beta, depthRemaining, true);
+	}
 
-		try (var scope = new StructuredTaskScope.ShutdownOnFailure("Find Min", Thread.ofPlatform().factory())) { // platform threads
-			var moveTasks = new HashMap<PlayerMove, StructuredTaskScope.Subtask<Double>>();
+	/**
+	 * @param allowNullMove whether to try null-move pruning in this subtree; false while verifying a null-move cutoff,
+	 *                      so that the verification cannot itself be misled by a null move
+	 */
+	private int negamax(SearchPosition position, SearchStack stack, int alpha, int beta, int depthRemaining, boolean allowNullMove) {
+		stack.countNode();
+		if (position.isDraw()) return 0;
+
+		// mate distance pruning: no line from here can mate sooner than being mated on the spot, or mating on the next move
+		alpha = Math.max(alpha, -(BoardEvaluator.MATE - position.ply()));
+		beta = Math.min(beta, BoardEvaluator.MATE - position.ply() - 1);
+		if (alpha >= beta) return alpha;
+
+		var rootWindow = stack.rootWindow();
+		if (rootWindow != null) { // narrow the window to the best score another thread has found for the root
+			int shared = rootWindow.alpha();
+			if (position.currentTurn() == rootWindow.player()) {
+				if (shared > alpha && shared < beta) alpha = shared;
+			} else {
+				if (-shared < beta && -shared > alpha) beta = -shared;
+			}
+		}
 
-			for (PlayerMove move : orderedLegalMoves(board)) {
-				var copy = board.copy();
-				copy.makeMove(move);
+		long entry = transpositionTable.probe(position.zobristKey());
+		int stored = storedScore(entry, position.ply(), alpha, beta, depthRemaining);
+		if (stored != NO_SCORE) return stored;
 
-				moveTasks.put(move, scope.fork(() -> concurrentAlphaBetaMax(copy, alpha, beta, depth - 1)));
-			}
+		if (depthRemaining == 0) return quiescence(position, stack, alpha, beta);
 
-			scope.join();
-			scope.throwIfFailed();
+		boolean inCheck = position.isInCheck();
+		boolean frontier = !inCheck && depthRemaining < RAZOR_MARGINS.length && Math.abs(alpha) < BoardEvaluator.MAX_EVALUATION;
+		int staticEval = frontier ? evaluate(position) : NO_SCORE;
 
-			moveTasks.forEach((move, task) -> moveScores.put(move, task.get()));
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e);
+		// razoring: so far below alpha that only a tactic could save the node, and quiescence search looks for those
+		if (frontier && beta - alpha == NULL_WINDOW && staticEval + RAZOR_MARGINS[depthRemaining] < alpha) {
+			int score = quiescence(position, stack, alpha, beta, true);
+			if (depthRemaining == 1 || score <= alpha) return score;
 		}
 
-		PlayerMove bestMove = null;
-		double bestScore = Double.POSITIVE_INFINITY;
-		for (var entry : moveScores.entrySet()) {
-			if (entry.getValue() < bestScore) {
-				bestScore = entry.getValue();
-				bestMove = entry.getKey();
+		// null-move pruning, only where a cutoff is wanted and likely: at null-window nodes already at or above beta
+		if (allowNullMove && !inCheck && beta - alpha == NULL_WINDOW && isNullMoveAllowed(position, beta, depthRemaining)) {
+			if (staticEval == NO_SCORE) staticEval = evaluate(position);
+			if (staticEval >= beta && nullMoveFailsHigh(position, stack, beta, depthRemaining)) {
+				store(position, depthRemaining, TranspositionTable.LOWER_BOUND, beta, Move.NONE);
+				return beta;
 			}
 		}
-		return bestMove;
-	}
 
-	private double concurrentAlphaBetaMax(Board board, double alpha, AtomicReference<Double> beta, int depthRemaining) {
-		if (depthRemaining == 0 || board.gameState() != GameState.UNFINISHED) return evaluate(board);
-		for (PlayerMove move : orderedLegalMoves(board)) {
-			var moveRecord = board.makeMove(move);
-			try {
-				double score = alphaBetaMin(board, alpha, beta.get(), depthRemaining - 1);
-				double prevMin = beta.get();
-				if (score >= prevMin) return prevMin; // hard beta cutoff
-				if (score > alpha)
-					alpha = score; // alpha acts like max
-			} finally {
-				board.unmakeMove(moveRecord);
+		// futility pruning: too close to the horizon for a quiet move to make up the difference
+		boolean futile = frontier && depthRemaining < FUTILITY_MARGINS.length && staticEval + FUTILITY_MARGINS[depthRemaining] <= alpha;
+
+		var moves = stack.stagedMoves(position.ply());
+		moves.reset(position, stack, TranspositionTable.bestMove(entry), inCheck);
+
+		int originalAlpha = alpha;
+		int bestMove = Move.NONE;
+		int i = 0;
+		for (int move; (move = moves.next()) != Move.NONE; i++) {
+			if (futile && i > 0 && !position.isCapture(move) && !Move.isPromotion(move) && !givesCheck(position, move))
+				continue;
+
+			int reduction = inCheck ? 0 : lateMoveReduction(position, move, i, depthRemaining);
+			int score = searchMove(position, stack, move, i == 0, reduction, alpha, beta, depthRemaining, allowNullMove);
+			if (score >= beta) {
+				MoveOrdering.recordCutoff(position, stack, move, depthRemaining);
+				store(position, depthRemaining, TranspositionTable.LOWER_BOUND, beta, move);
+				return beta; // hard beta cutoff
+			}
+			if (score > alpha) {
+				alpha = score;
+				bestMove = move;
 			}
 		}
+		if (i == 0) return terminalScore(position);
+
+		store(position, depthRemaining, alpha > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND, alpha, bestMove);
 		return alpha;
 	}
 
-	private double concurrentAlphaBetaMin(Board board, AtomicReference<Double> alpha, double beta, int depthRemaining) {
-		if (depthRemaining == 0 || board.gameState() != GameState.UNFINISHED) return evaluate(board);
-		for (PlayerMove move : orderedLegalMoves(board)) {
-			var moveRecord = board.makeMove(move);
+	/**
+	 * Searches captures and promotions until the position is quiet, so that no position is evaluated in the middle of an exchange.
+	 * The player to move may stand pat, taking the evaluation instead of capturing, except in check, where every evasion is searched.
+	 * @return the score of the position for the player to move, clamped to the window
+	 */
+	private int quiescence(SearchPosition position, SearchStack stack, int alpha, int beta) {
+		return quiescence(position, stack, alpha, beta, false);
+	}
+
+	/**
+	 * @param quietChecks whether to also search the quiet moves which give check, for a razored node, where they are the
+	 *                    likeliest way to make up a large deficit
+	 */
+	private int quiescence(SearchPosition position, SearchStack stack, int alpha, int beta, boolean quietChecks) {
+		stack.countNode();
+		if (position.isDraw()) return 0;
+		if (position.ply() >= SearchPosition.MAX_PLY - 1) return evaluate(position);
+
+		var moves = stack.moves(position.ply());
+		boolean inCheck = position.isInCheck();
+		int standPat = -INFINITY;
+		if (inCheck) {
+			position.generateLegalMoves(moves);
+			if (moves.isEmpty()) return terminalScore(position);
+		} else {
+			standPat = evaluate(position);
+			if (standPat >= beta) return beta;
+			if (standPat > alpha) alpha = standPat;
+			position.generateLegalCaptures(moves);
+		}
+		MoveOrdering.orderCaptures(position, moves);
+
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			if (!inCheck) {
+				// delta pruning: even winning the piece for nothing would not reach alpha; or it loses material once the exchange is over.
+				// Either way, a capture which gives check is still searched, since it may mate, whatever the material.
+				boolean hopeless = standPat + MoveOrdering.materialGain(position, move) + DELTA_MARGIN <= alpha;
+				boolean losing = !Move.isPromotion(move) && position.see(move) < 0;
+				if ((hopeless || losing) && !givesCheck(position, move))
+					continue;
+			}
+
+			int score;
+			position.make(move);
 			try {
-				double score = alphaBetaMax(board, alpha.get(), beta, depthRemaining - 1);
-				double prevMax = alpha.get();
-				if (score <= prevMax) return prevMax; // hard alpha cutoff
-				if (score < beta)
-					beta = score; // beta acts like min
+				score = -quiescence(position, stack, -beta, -alpha);
 			} finally {
-				board.unmakeMove(moveRecord);
+				position.unmake();
 			}
+			if (score >= beta) return beta;
+			if (score > alpha) alpha = score;
 		}
-		return beta;
-	}
 
-	private double alphaBetaMax(Board board, double alpha, double beta, int depthRemaining) {
-		if (depthRemaining == 0 || board.gameState() != GameState.UNFINISHED) return evaluate(board);
-		for (PlayerMove move : orderedLegalMoves(board)) {
-			var moveRecord = board.makeMove(move);
-			try {
-				double score = alphaBetaMin(board, alpha, beta, depthRemaining - 1);
-				if (score >= beta)
-					return beta; // hard beta cutoff
-				if (score > alpha)
-					alpha = score; // alpha acts like max
-			} finally {
-				board.unmakeMove(moveRecord);
+		if (quietChecks && !inCheck) {
+			position.generateLegalQuiets(moves);
+			for (int i = 0; i < moves.size(); i++) {
+				int score;
+				position.make(moves.get(i));
+				try {
+					if (!position.isInCheck()) continue;
+					score = -quiescence(position, stack, -beta, -alpha);
+				} finally {
+					position.unmake();
+				}
+				if (score >= beta) return beta;
+				if (score > alpha) alpha = score;
 			}
 		}
 		return alpha;
 	}
 
-	private double alphaBetaMin(Board board, double alpha, double beta, int depthRemaining) {
-		if (depthRemaining == 0 || board.gameState() != GameState.UNFINISHED) return evaluate(board);
-		for (PlayerMove move : orderedLegalMoves(board)) {
-			var moveRecord = board.makeMove(move);
-			try {
-				double score = alphaBetaMax(board, alpha, beta, depthRemaining - 1);
-				if (score <= alpha)
-					return alpha; // hard alpha cutoff
-				if (score < beta)
-					beta = score; // beta acts like min
-			} finally {
-				board.unmakeMove(moveRecord);
-			}
+	/**
+	 * Guards null-move pruning against the positions where passing would be better than any real move, so that
+	 * a fail high after passing proves nothing: in endings where the side to move has at most one piece besides its king and pawns,
+	 * where zugzwang is common. Must not be called in check, where passing is illegal.
+	 */
+	private static boolean isNullMoveAllowed(SearchPosition position, int beta, int depthRemaining) {
+		return depthRemaining >= NULL_MOVE_MIN_DEPTH
+				&& !position.lastMoveWasNull()
+				&& Math.abs(beta) < BoardEvaluator.MAX_EVALUATION // a null move can't prove a mate
+				&& position.nonPawnPieceCount() > 1;
+	}
+
+	/**
+	 * Late move reductions: moves this far down the ordering rarely turn out best, so quiet moves and losing captures
+	 * are first searched less deeply, and only searched properly if they beat alpha anyway.
+	 * Must not be called in check, where every evasion matters.
+	 * @return how many plies to reduce the move by
+	 */
+	private static int lateMoveReduction(SearchPosition position, int move, int moveIndex, int depthRemaining) {
+		if (depthRemaining < LATE_MOVE_MIN_DEPTH || moveIndex < LATE_MOVE_MIN_INDEX || Move.isPromotion(move))
+			return 0;
+		if (position.isCapture(move) && position.see(move) >= 0)
+			return 0;
+
+		int reduction = LATE_MOVE_REDUCTIONS[Math.min(depthRemaining, 63)][Math.min(moveIndex, 63)];
+		return Math.min(reduction, depthRemaining - 2); // always leave at least one ply to search
+	}
+
+	private static boolean givesCheck(SearchPosition position, int move) {
+		position.make(move);
+		try {
+			return position.isInCheck();
+		} finally {
+			position.unmake();
+		}
+	}
+
+	/**
+	 * Null-move pruning: lets the opponent move twice in a row, at reduced depth. If even that leaves this player
+	 * at or above beta, any real move would most likely be better still, and the node can be cut off without searching them.
+	 * @return whether the null move, and its verification if one is needed, failed high
+	 */
+	private boolean nullMoveFailsHigh(SearchPosition position, SearchStack stack, int beta, int depthRemaining) {
+		int reduction = depthRemaining > 6 ? 3 : 2;
+		int nullDepth = Math.max(0, depthRemaining - 1 - reduction);
+
+		int score;
+		position.makeNullMove();
+		try {
+			// at the horizon, a quiet check is the likeliest threat the pass ignored, so look for those too, as razoring does
+			score = nullDepth == 0
+					? -quiescence(position, stack, -beta, -beta + NULL_WINDOW, true)
+					: -negamax(position, stack, -beta, -beta + NULL_WINDOW, nullDepth);
+		} finally {
+			position.unmake();
 		}
-		return beta;
+		if (score < beta) return false;
+		if (depthRemaining < NULL_MOVE_VERIFICATION_DEPTH) return true;
+
+		// deep cutoffs are costly to get wrong: check with a real, reduced search of this node
+		return negamax(position, stack, beta - NULL_WINDOW, beta, depthRemaining - reduction, false) >= beta;
 	}
 }
@@ -0,0 +1,77 @@
+package ax.xz.max.chess.engine.choice;
+
+import ax.xz.max.chess.Board;
+import ax.xz.max.chess.engine.evaluators.BoardEvaluator;
+import ax.xz.max.chess.engine.evaluators.PieceMapEvaluator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FasterAlphaBetaSearchTest {
+	@Test
+	void testEveryParallelismFindsMateInTwo() {
+		for (var parallelism : FasterAlphaBetaSearch.Parallelism.values()) {
+			var board = Board.fromFEN("5Kbk/6pp/6P1/8/8/8/8/7R w - - 0 1");
+			var search = new FasterAlphaBetaSearch(new PieceMapEvaluator(), 3, new TranspositionTable(1), parallelism);
+			assertEquals("h1h6", search.chooseNextMove(board).toUCI(), parallelism.name());
+		}
+	}
+
+	@Test
+	void testNullMoveIsNotMisledByZugzwang() {
+		// after Rh6 every black move allows mate, so black, with only a bishop besides its king and pawns, would rather pass
+		for (var parallelism : FasterAlphaBetaSearch.Parallelism.values()) {
+			for (int depth = 4; depth <= 6; depth++) {
+				var board = Board.fromFEN("5Kbk/6pp/6P1/8/8/8/8/7R w - - 0 1");
+				var search = new FasterAlphaBetaSearch(new PieceMapEvaluator(), depth, new TranspositionTable(1), parallelism);
+				assertEquals("h1h6", search.chooseNextMove(board).toUCI(), parallelism.name() + " at depth " + depth);
+			}
+		}
+	}
+
+	@Test
+	void testEveryParallelismMovesFromRepeatedPosition() {
+		for (var parallelism : FasterAlphaBetaSearch.Parallelism.values()) {
+			var board = new Board();
+			for (var move : new String[]{"Nf3", "Nf6", "Ng1", "Ng8"})
+				board.makeMove(move);
+			// the root is a repetition, but it must still be searched for a move
+			var search = new FasterAlphaBetaSearch(new PieceMapEvaluator(), 4, new TranspositionTable(1), parallelism);
+			assertNotNull(search.chooseNextMove(board), parallelism.name());
+		}
+	}
+
+	@Test
+	void testSerialSearchFindsSacrificialMate() {
+		// WAC.001: Qg6 gives up the queen, but mates next move whether or not it is taken
+		var board = Board.fromFEN("2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - 0 1");
+		for (int depth = 3; depth <= 5; depth++) {
+			var analysis = new FasterAlphaBetaSearch(new PieceMapEvaluator(), depth, new TranspositionTable(1)).analyse(board, 1).getFirst();
+			assertEquals("g3g6", analysis.move().toUCI(), "analysis at depth " + depth);
+			assertTrue(analysis.isMate(), "analysis at depth " + depth);
+
+			var search = new FasterAlphaBetaSearch(new PieceMapEvaluator(), depth, new TranspositionTable(1), FasterAlphaBetaSearch.Parallelism.LAZY_SMP);
+			assertEquals("g3g6", search.chooseNextMove(board).toUCI(), "LAZY_SMP at depth " + depth);
+		}
+	}
+
+	@Test
+	void testAnalysis() {
+		var board = Board.fromFEN("5Kbk/6pp/6P1/8/8/8/8/7R w - - 0 1");
+		var lines = new FasterAlphaBetaSearch(new PieceMapEvaluator(), 4, new TranspositionTable(1)).analyse(board, 3);
+		assertEquals(3, lines.size());
+
+		var best = lines.getFirst();
+		assertEquals("h1h6", best.move().toUCI());
+		assertEquals(BoardEvaluator.MATE - 3, best.score());
+		assertEquals(3, best.moves().size()); // Rh6, any, and mate
+
+		var alone = new FasterAlphaBetaSearch(new PieceMapEvaluator(), 4, new TranspositionTable(1)).analyse(board, 1).getFirst();
+		assertEquals(best.move(), alone.move());
+		assertEquals(best.score(), alone.score());
+		for (int i = 1; i < lines.size(); i++) {
+			assertTrue(lines.get(i).score() <= lines.get(i - 1).score());
+			assertNotEquals(lines.get(i).move(), lines.get(i - 1).move());
+		}
+	}
+}
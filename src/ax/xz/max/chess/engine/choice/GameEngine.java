@@ -0,0 +1,88 @@
+package ax.xz.max.chess.engine.choice;
+
+import ax.xz.max.chess.Board;
+import ax.xz.max.chess.engine.evaluators.BoardEvaluator;
+import ax.xz.max.chess.moves.PlayerMove;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An engine for one game, which keeps what it learnt searching for one move when searching for the next:
+ * <ul>
+ *     <li>its transposition table, whose entries are aged by each new search rather than cleared</li>
+ *     <li>the killers and history of its search thread, moved along by the plies played since and halved</li>
+ *     <li>the principal variation it last found, which predicts the opponent's reply</li>
+ * </ul>
+ * Positions from earlier searches recur a few plies deeper, so the first iterations of each search are nearly free.
+ * <p>
+ * Searches run one at a time on the engine's own platform thread, since the killers and history belong to the thread that searches.
+ * Its helper threads are kept for the whole game too, each with its own killers and history.
+ */
+public final class GameEngine implements AutoCloseable {
+	private final IterativeDeepeningSearch search;
+	private final ExecutorService searchThread;
+	private final SearchThreads helpers;
+
+	private int previousPlies = -1; // Board#getNumMoves() at the last search, or -1 before the first; only used on the search thread
+	private volatile List<PlayerMove> principalVariation = List.of();
+
+	/**
+	 * @param name the name of the search thread
+	 */
+	public GameEngine(BoardEvaluator evaluator, String name) {
+		this.helpers = SearchThreads.forEachProcessor(name + " Helper");
+		// the default budget is never used: each move is given its own
+		this.search = new IterativeDeepeningSearch(evaluator, Duration.ofSeconds(1), helpers);
+		this.searchThread = Executors.newSingleThreadExecutor(Thread.ofPlatform().name(name).factory());
+	}
+
+	/**
+	 * Searches the board on the engine's thread, waiting for it to finish
+	 * @param budget the time to spend on the move
+	 * @return the best move, or null if there are no legal moves
+	 */
+	public PlayerMove chooseNextMove(Board board, Duration budget) throws InterruptedException {
+		try {
+			return searchThread.submit(() -> {
+				var stack = SearchStack.forCurrentThread();
+				if (previousPlies != -1)
+					stack.advance(board.getNumMoves() - previousPlies);
+				previousPlies = board.getNumMoves();
+
+				var move = search.chooseNextMove(board, budget);
+				principalVariation = search.principalVariation(board);
+				return move;
+			}).get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return the line the last search expects, starting with the move it chose, or an empty list before the first search
+	 */
+	public List<PlayerMove> principalVariation() {
+		return principalVariation;
+	}
+
+	/**
+	 * @return the reply the last search expects from the opponent, or null if it does not expect one
+	 */
+	public PlayerMove expectedReply() {
+		var line = principalVariation;
+		return line.size() > 1 ? line.get(1) : null;
+	}
+
+	/**
+	 * Stops the search and helper threads once any search in progress has finished
+	 */
+	@Override
+	public void close() {
+		searchThread.shutdown();
+		helpers.close();
+	}
+}
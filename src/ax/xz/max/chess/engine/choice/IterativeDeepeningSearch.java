@@ -0,0 +1,102 @@
+package ax.xz.max.chess.engine.choice;
+
+import ax.xz.max.chess.Board;
+import ax.xz.max.chess.Move;
+import ax.xz.max.chess.SearchPosition;
+import ax.xz.max.chess.engine.evaluators.BoardEvaluator;
+import ax.xz.max.chess.moves.PlayerMove;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Runs {@link FasterAlphaBetaSearch} at depth 1, 2, 3, ... until it runs out of time,
+ * and plays the best move of the deepest search which finished.
+ * <p>
+ * Each search orders its moves using the transposition table filled by the one before,
+ * so the shallower searches cost little compared to the last one.
+ * No new depth is started after the soft deadline, half of the budget, since it would rarely finish,
+ * nor once a search has found a forced mate, which deeper searches would only find again.
+ * A search still running at the hard deadline, the full budget, is abandoned.
+ */
+public record IterativeDeepeningSearch(
+		BoardEvaluator evaluator,
+		Duration budget,
+		TranspositionTable transpositionTable,
+		FasterAlphaBetaSearch.Parallelism parallelism,
+		SearchThreads threads
+) implements MovePicker {
+	private static final int DEFAULT_TABLE_MEGABYTES = 64;
+	private static final int MAX_DEPTH = 64;
+
+	public IterativeDeepeningSearch {
+		if (budget.isNegative() || budget.isZero())
+			throw new IllegalArgumentException("Search time budget must be positive");
+	}
+
+	/**
+	 * @param threads the threads to search with at every depth, kept by the caller so that they keep their search stacks
+	 */
+	public IterativeDeepeningSearch(BoardEvaluator evaluator, Duration budget, SearchThreads threads) {
+		this(evaluator, budget, new TranspositionTable(DEFAULT_TABLE_MEGABYTES), FasterAlphaBetaSearch.Parallelism.LAZY_SMP, threads);
+	}
+
+	public IterativeDeepeningSearch(BoardEvaluator evaluator, Duration budget) {
+		this(evaluator, budget, SearchThreads.shared());
+	}
+
+	@Override
+	public PlayerMove chooseNextMove(Board board) {
+		return chooseNextMove(board, budget);
+	}
+
+	/**
+	 * @param budget the time to spend on this move, overriding the default
+	 */
+	public PlayerMove chooseNextMove(Board board, Duration budget) {
+		long start = System.nanoTime();
+		long softDeadline = start + budget.toNanos() / 2;
+		long hardDeadline = start + budget.toNanos();
+
+		transpositionTable.newSearch();
+		var position = SearchPosition.of(board);
+
+		int bestMove = Move.NONE;
+		try {
+			for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+				var search = new FasterAlphaBetaSearch(evaluator, depth, transpositionTable, parallelism, threads);
+				// the first iteration always finishes, so there is a move to play however little time there is
+				bestMove = search.bestMove(position, depth == 1 ? Long.MAX_VALUE : hardDeadline);
+
+				if (System.nanoTime() - softDeadline > 0 || foundMate(position, depth))
+					break;
+			}
+		} catch (SearchAbortedException e) {
+			// keep the move from the last completed depth
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+
+		return bestMove == Move.NONE ? null : position.toPlayerMove(bestMove);
+	}
+
+	/**
+	 * @return the line expected from the board by the last search of it, as far as the transposition table remembers it,
+	 * or an empty list if the table has no move for the board
+	 */
+	public List<PlayerMove> principalVariation(Board board) {
+		var position = SearchPosition.of(board);
+		int bestMove = TranspositionTable.bestMove(transpositionTable.probe(position.zobristKey()));
+		return FasterAlphaBetaSearch.principalVariation(transpositionTable, position, bestMove, MAX_DEPTH);
+	}
+
+	/**
+	 * @return whether the score stored for the root is a mate, for either side, within the depth just searched
+	 */
+	private boolean foundMate(SearchPosition position, int depth) {
+		long entry = transpositionTable.probe(position.zobristKey());
+		int score = Math.abs(TranspositionTable.score(entry));
+		return entry != 0 && TranspositionTable.bound(entry) == TranspositionTable.EXACT
+				&& score > BoardEvaluator.MAX_EVALUATION && BoardEvaluator.MATE - score <= depth;
+	}
+}
@@ -0,0 +1,94 @@
+package ax.xz.max.chess.engine.choice;
+
+import ax.xz.max.chess.Move;
+import ax.xz.max.chess.MoveList;
+import ax.xz.max.chess.PieceType;
+import ax.xz.max.chess.SearchPosition;
+
+/**
+ * Orders moves so that the one most likely to cause a cutoff is searched first, using only a few array reads per move:
+ * <ol>
+ *     <li>the hash move, best in an earlier search of the position</li>
+ *     <li>captures which do not lose material, and promotions, by most valuable victim, then least valuable attacker</li>
+ *     <li>the two killer moves: quiet moves which caused a cutoff elsewhere at the same ply</li>
+ *     <li>other quiet moves, by how often they have caused cutoffs anywhere (the history heuristic)</li>
+ *     <li>captures which lose material, by static exchange evaluation</li>
+ * </ol>
+ * The killers and history belong to the searching thread's {@link SearchStack}.
+ */
+final class MoveOrdering {
+	private static final int HASH_MOVE = Integer.MAX_VALUE;
+	private static final int GOOD_CAPTURE = 2_000_000_000;
+	private static final int FIRST_KILLER = 1_900_000_000;
+	private static final int SECOND_KILLER = 1_800_000_000;
+	private static final int BAD_CAPTURE = -1_000_000_000;
+
+	private MoveOrdering() {}
+
+	/**
+	 * Sorts the moves, most promising first
+	 * @param hashMove the best move stored for the position, or {@link Move#NONE}
+	 */
+	static void orderMoves(SearchPosition position, SearchStack stack, MoveList moves, int hashMove) {
+		int ply = position.ply();
+		int firstKiller = stack.killer(ply, 0);
+		int secondKiller = stack.killer(ply, 1);
+
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			int score;
+			if (move == hashMove)
+				score = HASH_MOVE;
+			else if (position.isCapture(move)) {
+				int exchange = position.see(move);
+				score = exchange >= 0 ? GOOD_CAPTURE + mvvLva(position, move) : BAD_CAPTURE + exchange;
+			} else if (Move.isPromotion(move))
+				score = GOOD_CAPTURE + mvvLva(position, move);
+			else if (move == firstKiller)
+				score = FIRST_KILLER;
+			else if (move == secondKiller)
+				score = SECOND_KILLER;
+			else
+				score = stack.history(position.currentTurn(), move);
+			moves.setScore(i, score);
+		}
+		moves.sortByScore();
+	}
+
+	/**
+	 * Updates the killers and history after the move caused a beta cutoff, if it is quiet
+	 */
+	static void recordCutoff(SearchPosition position, SearchStack stack, int move, int depthRemaining) {
+		if (position.isCapture(move) || Move.isPromotion(move)) return; // already ordered early
+
+		stack.addKiller(position.ply(), move);
+		stack.addHistory(position.currentTurn(), move, depthRemaining);
+	}
+
+	/**
+	 * @return the material the move wins in centipawns, ignoring any recapture: the piece it takes, plus what it promotes to
+	 */
+	static int materialGain(SearchPosition position, int move) {
+		PieceType captured = position.capturedType(move);
+		int result = captured == null ? 0 : captured.value();
+		if (Move.isPromotion(move))
+			result += Move.promotionType(move).value() - PieceType.PAWN.value();
+		return result;
+	}
+
+	/**
+	 * @return the most valuable victim, least valuable attacker score of the move: higher for bigger gains, and, between equal gains, cheaper pieces
+	 */
+	static int mvvLva(SearchPosition position, int move) {
+		return materialGain(position, move) * 10 - position.pieceAt(Move.from(move)).type().value() / 10;
+	}
+
+	/**
+	 * Sorts captures by {@link #mvvLva(SearchPosition, int)}, best first
+	 */
+	static void orderCaptures(SearchPosition position, MoveList moves) {
+		for (int i = 0; i < moves.size(); i++)
+			moves.setScore(i, mvvLva(position, moves.get(i)));
+		moves.sortByScore();
+	}
+}
@@ -0,0 +1,30 @@
+package ax.xz.max.chess.engine.choice;
+
+import ax.xz.max.chess.engine.evaluators.BoardEvaluator;
+import ax.xz.max.chess.moves.PlayerMove;
+
+import java.util.List;
+
+/**
+ * One line of an analysis, see {@link FasterAlphaBetaSearch#analyse}
+ *
+ * @param moves the expected line of play, starting with the root move; as long as the transposition table remembers it, up to the search depth
+ * @param score the exact score of the root move, in centipawns, for the player to move at the root.
+ *              Mate in n plies scores {@link BoardEvaluator#MATE} - n, and being mated in n plies the negation of that
+ */
+public record PrincipalVariation(List<PlayerMove> moves, int score) {
+	public PrincipalVariation {
+		if (moves.isEmpty())
+			throw new IllegalArgumentException("A principal variation needs at least its root move");
+		moves = List.copyOf(moves);
+	}
+
+	public PlayerMove move() {
+		return moves.getFirst();
+	}
+
+	/** @return whether the score is a forced mate, for either side */
+	public boolean isMate() {
+		return Math.abs(score) > BoardEvaluator.MAX_EVALUATION;
+	}
+}
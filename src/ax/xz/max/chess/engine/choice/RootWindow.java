@@ -0,0 +1,46 @@
+package ax.xz.max.chess.engine.choice;
+
+import ax.xz.max.chess.Player;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The alpha bound of a root position whose moves are searched on separate threads.
+ * Each thread publishes the score of its move as soon as it has one, and the others read the bound
+ * at every node, so that their subtrees are pruned against the best root move found so far.
+ * The root's moves are searched with an open window, so alpha is the only bound there is to share.
+ * <p>
+ * Neither reading nor raising the bound locks or allocates.
+ */
+final class RootWindow {
+	private final Player player;
+	private final AtomicInteger alpha = new AtomicInteger(-FasterAlphaBetaSearch.INFINITY);
+
+	/**
+	 * @param player the player to move at the root, whose point of view the bound is from
+	 */
+	RootWindow(Player player) {
+		this.player = player;
+	}
+
+	Player player() {
+		return player;
+	}
+
+	/** @return the best score the root player is known to reach */
+	int alpha() {
+		return alpha.get();
+	}
+
+	/**
+	 * @return whether the score is better for the root player than every score published before it
+	 */
+	boolean raiseAlpha(int score) {
+		int current;
+		do {
+			current = alpha.get();
+			if (score <= current) return false;
+		} while (!alpha.compareAndSet(current, score));
+		return true;
+	}
+}
@@ -0,0 +1,18 @@
+package ax.xz.max.chess.engine.choice;
+
+import java.io.Serial;
+
+/**
+ * Unwinds a search which ran out of time. Carries no stack trace, since it is thrown from deep inside the tree
+ * and always caught by the search driver.
+ */
+final class SearchAbortedException extends RuntimeException {
+	@Serial
+	private static final long serialVersionUID = 1L;
+
+	static final SearchAbortedException INSTANCE = new SearchAbortedException();
+
+	private SearchAbortedException() {
+		super("Search aborted", null, false, false);
+	}
+}
@@ -0,0 +1,150 @@
+package ax.xz.max.chess.engine.choice;
+
+import ax.xz.max.chess.Move;
+import ax.xz.max.chess.MoveList;
+import ax.xz.max.chess.Player;
+import ax.xz.max.chess.SearchPosition;
+
+/**
+ * Per-thread scratch space for search: one move buffer and one {@link StagedMoves} per ply, reused by every node at that ply
+ * and by every later search on the same thread. Together with the undo stack inside {@link SearchPosition},
+ * this lets the search visit nodes without allocating.
+ * <p>
+ * It also keeps the thread's move ordering statistics, see {@link MoveOrdering}, which carry over from one search to the next.
+ */
+final class SearchStack {
+	private static final ThreadLocal<SearchStack> STACKS = ThreadLocal.withInitial(SearchStack::new);
+
+	/** history scores are halved once one of them reaches this, so that recent cutoffs count for more than old ones */
+	private static final int MAX_HISTORY = 1 << 20;
+
+	/** how many nodes to search between looking at the clock */
+	private static final int DEADLINE_CHECK_INTERVAL = 64;
+
+	private final MoveList[] moves = new MoveList[SearchPosition.MAX_PLY + 1];
+	private final StagedMoves[] stagedMoves = new StagedMoves[SearchPosition.MAX_PLY + 1];
+	private final int[][] killers = new int[SearchPosition.MAX_PLY + 1][2]; // [ply][slot], newest first
+	private final int[][][] history = new int[2][64][64]; // [side][from][to]
+	private long nodes;
+	private long deadline = Long.MAX_VALUE; // System.nanoTime() value
+	private RootWindow rootWindow; // null unless the root's moves share their bounds
+
+	private SearchStack() {}
+
+	/** @return the stack belonging to the current thread */
+	static SearchStack forCurrentThread() {
+		return STACKS.get();
+	}
+
+	/**
+	 * @return the move buffer for the input ply, which is overwritten by the next node at that ply
+	 */
+	MoveList moves(int ply) {
+		var result = moves[ply];
+		if (result == null)
+			result = moves[ply] = new MoveList(); // only allocated the first time this thread reaches the ply
+		return result;
+	}
+
+	/**
+	 * @return the staged move generator for the input ply, which is reset by the next node at that ply
+	 */
+	StagedMoves stagedMoves(int ply) {
+		var result = stagedMoves[ply];
+		if (result == null)
+			result = stagedMoves[ply] = new StagedMoves();
+		return result;
+	}
+
+	/**
+	 * @return the quiet move which last caused a cutoff at the ply, or the one before it for slot 1, or {@link Move#NONE}
+	 */
+	int killer(int ply, int slot) {
+		return killers[ply][slot];
+	}
+
+	/**
+	 * Remembers a quiet move which caused a cutoff, since the same move often refutes the other moves tried at that ply
+	 */
+	void addKiller(int ply, int move) {
+		int[] slots = killers[ply];
+		if (slots[0] != move) {
+			slots[1] = slots[0];
+			slots[0] = move;
+		}
+	}
+
+	/**
+	 * @return how often, weighted by depth, the quiet move has caused a cutoff for the side, wherever it was played
+	 */
+	int history(Player side, int move) {
+		return history[side.ordinal()][Move.from(move)][Move.to(move)];
+	}
+
+	void addHistory(Player side, int move, int depthRemaining) {
+		int[] toScores = history[side.ordinal()][Move.from(move)];
+		toScores[Move.to(move)] += depthRemaining * depthRemaining;
+		if (toScores[Move.to(move)] >= MAX_HISTORY)
+			halveHistory();
+	}
+
+	private void halveHistory() {
+		for (int[][] sideScores : history) {
+			for (int[] scores : sideScores) {
+				for (int to = 0; to < 64; to++)
+					scores[to] /= 2;
+			}
+		}
+	}
+
+	/**
+	 * Carries the killers and history over to a search of a position the given number of plies further into the game:
+	 * each killer moves to the ply its position is now at, and the history is halved, so that it gives way to the new search's cutoffs
+	 */
+	void advance(int plies) {
+		for (int ply = 0; ply < killers.length; ply++) {
+			int[] slots = killers[ply];
+			if (plies >= 0 && ply + plies < killers.length) { // after a takeback, the killers no longer fit any ply
+				slots[0] = killers[ply + plies][0];
+				slots[1] = killers[ply + plies][1];
+			} else {
+				slots[0] = slots[1] = Move.NONE;
+			}
+		}
+		halveHistory();
+	}
+
+	/**
+	 * @param deadline the {@link System#nanoTime()} at which to abort the search, or {@link Long#MAX_VALUE} to never abort
+	 */
+	void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * @param rootWindow the window shared with the threads searching the other root moves, or null if there is none
+	 */
+	void setRootWindow(RootWindow rootWindow) {
+		this.rootWindow = rootWindow;
+	}
+
+	/** @return the window shared with the threads searching the other root moves, or null if there is none */
+	RootWindow rootWindow() {
+		return rootWindow;
+	}
+
+	/**
+	 * Counts a node, and every so often checks the deadline
+	 * @throws SearchAbortedException if the deadline has passed, or the thread has been interrupted
+	 */
+	void countNode() {
+		if (++nodes % DEADLINE_CHECK_INTERVAL == 0
+				&& (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0 || Thread.currentThread().isInterrupted()))
+			throw SearchAbortedException.INSTANCE;
+	}
+
+	/** @return the number of nodes searched on this thread, over every search */
+	long nodes() {
+		return nodes;
+	}
+}
@@ -0,0 +1,79 @@
+package ax.xz.max.chess.engine.choice;
+
+import ax.xz.max.chess.Board;
+import ax.xz.max.chess.Piece;
+import ax.xz.max.chess.Player;
+import ax.xz.max.chess.SearchPosition;
+import ax.xz.max.chess.engine.evaluators.BoardEvaluator;
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SearchStackTest {
+	/** counts material without building a board, so that only the search itself is measured, not the evaluator */
+	private static final BoardEvaluator MATERIAL = new BoardEvaluator() {
+		@Override
+		public double evaluate(Board board) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int evaluateCentipawns(SearchPosition position) {
+			int result = 0;
+			for (int square = 0; square < 64; square++) {
+				Piece piece = position.pieceAt(square);
+				if (piece == null) continue;
+				int value = switch (piece.type()) {
+					case PAWN -> 100;
+					case KNIGHT, BISHOP -> 300;
+					case ROOK -> 500;
+					case QUEEN -> 900;
+					case KING -> 0;
+				};
+				result += piece.owner() == Player.WHITE ? value : -value;
+			}
+			return result;
+		}
+	};
+
+	@Test
+	void testSearchDoesNotAllocatePerNode() {
+		var threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		var board = Board.fromFEN("r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4");
+		for (int i = 0; i < 3; i++) // warm up: fill the stack's move buffers, load classes
+			measure(threads, board, 7);
+
+		// each search allocates its position and result once, so only what the deeper search allocates on top counts
+		long[] shallow = measure(threads, board, 1);
+		long[] deep = measure(threads, board, 7);
+		long bytes = deep[0] - shallow[0];
+		long nodes = deep[1] - shallow[1];
+		System.out.printf("%d bytes over %d nodes: %.3f bytes per node%n", bytes, nodes, (double) bytes / nodes);
+
+		assertTrue(nodes > 10_000, "search should visit enough nodes to measure");
+		assertTrue((double) bytes / nodes < 1, "search should not allocate per node");
+	}
+
+	/**
+	 * Searches on this thread, which {@link FasterAlphaBetaSearch#analyse} does whatever the parallelism, with a fresh transposition table
+	 * @return the bytes allocated and the nodes visited
+	 */
+	private static long[] measure(ThreadMXBean threads, Board board, int depth) {
+		var search = new FasterAlphaBetaSearch(MATERIAL, depth, new TranspositionTable(1));
+		var stack = SearchStack.forCurrentThread();
+		long threadId = Thread.currentThread().threadId();
+		long nodesBefore = stack.nodes();
+		long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+
+		search.analyse(board, 1);
+
+		return new long[]{threads.getThreadAllocatedBytes(threadId) - bytesBefore, stack.nodes() - nodesBefore};
+	}
+}
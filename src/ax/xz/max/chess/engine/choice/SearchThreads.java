@@ -0,0 +1,133 @@
+package ax.xz.max.chess.engine.choice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * A fixed set of platform threads which search alongside the thread that starts each search.
+ * The threads live as long as their owner, so each keeps its {@link SearchStack}, with its move buffers, killers and history,
+ * from one search to the next, rather than every search starting new threads with empty stacks.
+ * <p>
+ * Only one search may use the threads at a time, and it must wait for its tasks before it returns.
+ */
+public final class SearchThreads implements AutoCloseable {
+	private final int size;
+	private final ExecutorService executor;
+
+	/**
+	 * @param size how many threads to keep, besides the thread which starts each search; may be zero
+	 * @param name the prefix of the threads' names
+	 */
+	public SearchThreads(int size, String name) {
+		if (size < 0)
+			throw new IllegalArgumentException("Thread count must not be negative");
+		this.size = size;
+		this.executor = Executors.newFixedThreadPool(Math.max(size, 1), Thread.ofPlatform().name(name + " ", 0).daemon().factory());
+	}
+
+	/**
+	 * @return one thread for each processor besides the one starting the search
+	 */
+	public static SearchThreads forEachProcessor(String name) {
+		return new SearchThreads(Runtime.getRuntime().availableProcessors() - 1, name);
+	}
+
+	/**
+	 * @return the threads used by searches which are not given their own, never closed
+	 */
+	static SearchThreads shared() {
+		return Shared.INSTANCE;
+	}
+
+	private static final class Shared {
+		static final SearchThreads INSTANCE = forEachProcessor("Search Helper");
+	}
+
+	/** @return how many threads there are, besides the thread which starts each search */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Starts the task once on each thread
+	 * @param task given the index of the thread it runs on, from 0 to {@link #size()} - 1
+	 */
+	Tasks start(IntConsumer task) {
+		var finished = new CountDownLatch(size);
+		var claims = new ArrayList<AtomicBoolean>(size);
+		var futures = new ArrayList<Future<?>>(size);
+		for (int i = 0; i < size; i++) {
+			int index = i;
+			var claimed = new AtomicBoolean();
+			claims.add(claimed);
+			futures.add(executor.submit(() -> {
+				if (!claimed.compareAndSet(false, true)) return; // stopped before it started
+				try {
+					task.accept(index);
+				} finally {
+					finished.countDown();
+				}
+			}));
+		}
+		return new Tasks(claims, futures, finished);
+	}
+
+	/**
+	 * The tasks of one search, see {@link #start}
+	 */
+	static final class Tasks {
+		private final List<AtomicBoolean> claims; // set once the task has started, or once it has been stopped before starting
+		private final List<Future<?>> futures;
+		private final CountDownLatch finished;
+
+		private Tasks(List<AtomicBoolean> claims, List<Future<?>> futures, CountDownLatch finished) {
+			this.claims = claims;
+			this.futures = futures;
+			this.finished = finished;
+		}
+
+		/**
+		 * Waits for every task to finish
+		 * @throws RuntimeException the exception of the first task which failed, such as {@link SearchAbortedException}
+		 */
+		void join() throws InterruptedException {
+			finished.await();
+			for (var future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+				}
+			}
+		}
+
+		/**
+		 * Interrupts the tasks still running, which abort at their next deadline check, and waits for them all to stop.
+		 * Does nothing to tasks which have already finished.
+		 */
+		void stop() throws InterruptedException {
+			for (int i = 0; i < futures.size(); i++) {
+				if (claims.get(i).compareAndSet(false, true))
+					finished.countDown(); // it will do nothing when it runs
+				else
+					futures.get(i).cancel(true);
+			}
+			finished.await();
+		}
+	}
+
+	/**
+	 * Stops the threads once any search in progress has finished
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,152 @@
+package ax.xz.max.chess.engine.choice;
+
+import ax.xz.max.chess.Move;
+import ax.xz.max.chess.MoveList;
+import ax.xz.max.chess.SearchPosition;
+
+/**
+ * Yields the moves of one node in the order of {@link MoveOrdering}, generating each group only once the one before it runs out:
+ * <ol>
+ *     <li>the hash move, checked for legality but not generated</li>
+ *     <li>captures which do not lose material, and promotions</li>
+ *     <li>the killers, checked for legality but not generated</li>
+ *     <li>quiet moves, by history</li>
+ *     <li>captures which lose material, already set aside while generating the good ones</li>
+ * </ol>
+ * Since most cutoffs come from the hash move or a good capture, most nodes never generate their quiet moves.
+ * In check, every evasion is generated and ordered up front, as there are few of them.
+ * <p>
+ * Each {@link SearchStack} keeps one per ply, reset by {@link #reset} for each node, so that nothing is allocated during search.
+ */
+final class StagedMoves {
+	private enum Stage {HASH_MOVE, GOOD_CAPTURES, FIRST_KILLER, SECOND_KILLER, QUIETS, BAD_CAPTURES, EVASIONS, DONE}
+
+	private final MoveList captures = new MoveList();
+	private final MoveList badCaptures = new MoveList();
+	private final MoveList quiets = new MoveList();
+
+	private SearchPosition position;
+	private SearchStack stack;
+	private Stage stage;
+	private MoveList current; // the generated moves being handed out, or null before the stage has generated them
+	private int index;
+	private int hashMove;
+	private int firstKiller, secondKiller; // Move.NONE unless legal and yielded
+
+	/**
+	 * Starts over for a new node
+	 * @param hashMove the best move stored for the position, or {@link Move#NONE}
+	 */
+	void reset(SearchPosition position, SearchStack stack, int hashMove, boolean inCheck) {
+		this.position = position;
+		this.stack = stack;
+		this.hashMove = position.isLegal(hashMove) ? hashMove : Move.NONE;
+		this.stage = inCheck ? Stage.EVASIONS : Stage.HASH_MOVE;
+		this.current = null;
+		this.firstKiller = this.secondKiller = Move.NONE;
+	}
+
+	/**
+	 * @return the next move to search, or {@link Move#NONE} once every legal move has been yielded
+	 */
+	int next() {
+		while (true) {
+			switch (stage) {
+				case HASH_MOVE -> {
+					stage = Stage.GOOD_CAPTURES;
+					if (hashMove != Move.NONE) return hashMove;
+				}
+				case GOOD_CAPTURES -> {
+					if (current == null) generateCaptures();
+					int move = nextUnseen();
+					if (move != Move.NONE) return move;
+					stage = Stage.FIRST_KILLER;
+				}
+				case FIRST_KILLER -> {
+					stage = Stage.SECOND_KILLER;
+					int killer = stack.killer(position.ply(), 0);
+					if (isPlayableKiller(killer)) return firstKiller = killer;
+				}
+				case SECOND_KILLER -> {
+					stage = Stage.QUIETS;
+					int killer = stack.killer(position.ply(), 1);
+					if (isPlayableKiller(killer)) return secondKiller = killer;
+				}
+				case QUIETS -> {
+					if (current != quiets) generateQuiets();
+					int move = nextUnseen();
+					if (move != Move.NONE) return move;
+					stage = Stage.BAD_CAPTURES;
+					current = badCaptures;
+					badCaptures.sortByScore();
+					index = 0;
+				}
+				case BAD_CAPTURES, EVASIONS -> {
+					if (current == null) generateEvasions();
+					int move = nextUnseen();
+					if (move != Move.NONE) return move;
+					stage = Stage.DONE;
+				}
+				case DONE -> {
+					return Move.NONE;
+				}
+			}
+		}
+	}
+
+	private void generateCaptures() {
+		position.generateLegalCaptures(captures);
+		badCaptures.clear();
+
+		int kept = 0;
+		for (int i = 0; i < captures.size(); i++) {
+			int move = captures.get(i);
+			int exchange = Move.isPromotion(move) ? 0 : position.see(move);
+			if (exchange < 0) {
+				badCaptures.add(move);
+				badCaptures.setScore(badCaptures.size() - 1, exchange);
+			} else {
+				captures.set(kept, move);
+				captures.setScore(kept++, MoveOrdering.mvvLva(position, move));
+			}
+		}
+		captures.truncate(kept);
+		captures.sortByScore();
+		current = captures;
+		index = 0;
+	}
+
+	private void generateQuiets() {
+		position.generateLegalQuiets(quiets);
+		for (int i = 0; i < quiets.size(); i++)
+			quiets.setScore(i, stack.history(position.currentTurn(), quiets.get(i)));
+		quiets.sortByScore();
+		current = quiets;
+		index = 0;
+	}
+
+	private void generateEvasions() {
+		position.generateLegalMoves(quiets);
+		MoveOrdering.orderMoves(position, stack, quiets, hashMove);
+		hashMove = Move.NONE; // ordered first along with the rest, rather than yielded separately
+		current = quiets;
+		index = 0;
+	}
+
+	/**
+	 * @return the next move of the current list which was not already yielded by an earlier stage, or {@link Move#NONE}
+	 */
+	private int nextUnseen() {
+		while (index < current.size()) {
+			int move = current.get(index++);
+			if (move != hashMove && move != firstKiller && move != secondKiller)
+				return move;
+		}
+		return Move.NONE;
+	}
+
+	private boolean isPlayableKiller(int killer) {
+		return killer != Move.NONE && killer != hashMove && killer != firstKiller
+				&& !position.isCapture(killer) && !Move.isPromotion(killer) && position.isLegal(killer);
+	}
+}
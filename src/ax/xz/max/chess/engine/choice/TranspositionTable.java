@@ -0,0 +1,123 @@
+package ax.xz.max.chess.engine.choice;
+
+import ax.xz.max.chess.Move;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size hash table of search results, keyed by Zobrist key and shared between search threads without locking.
+ * <p>
+ * Each entry is two longs: the key XORed with the data, then the data. A reader only trusts an entry
+ * if XORing them back gives its own key, so an entry torn by two threads writing at once is simply a miss.
+ * <p>
+ * Entries are grouped into buckets of two. The first slot prefers deeper results, and is only replaced by a
+ * shallower one once it is left over from an earlier search; the second slot always takes the newest result.
+ * <p>
+ * Data layout:
+ * <pre>
+ * bits  0-31  score, in centipawns
+ * bits 32-47  best move, see {@link Move}
+ * bits 48-55  depth searched
+ * bits 56-57  bound type
+ * bits 58-63  generation
+ * </pre>
+ */
+public final class TranspositionTable {
+	public static final int EXACT = 1;
+	/** the score is a lower bound: the true score is at least as good for the player to move */
+	public static final int LOWER_BOUND = 2;
+	/** the score is an upper bound: the true score is at most as good for the player to move */
+	public static final int UPPER_BOUND = 3;
+
+	private static final int LONGS_PER_ENTRY = 2;
+	private static final int LONGS_PER_BUCKET = 2 * LONGS_PER_ENTRY;
+	private static final int GENERATIONS = 64;
+
+	private final long[] table;
+	private final long bucketMask;
+	private int generation; // only changed between searches
+
+	/**
+	 * @param megabytes the maximum size of the table; the number of buckets is rounded down to a power of two
+	 */
+	public TranspositionTable(int megabytes) {
+		if (megabytes <= 0)
+			throw new IllegalArgumentException("Transposition table size must be positive");
+
+		long buckets = Long.highestOneBit(megabytes * 1024L * 1024L / (LONGS_PER_BUCKET * Long.BYTES));
+		if (buckets * LONGS_PER_BUCKET > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Transposition table too large: " + megabytes + "MB");
+
+		this.table = new long[(int) (buckets * LONGS_PER_BUCKET)];
+		this.bucketMask = buckets - 1;
+	}
+
+	/**
+	 * Ages every stored entry, so that results from earlier searches give way to new ones.
+	 * Must not be called while a search is using the table.
+	 */
+	public void newSearch() {
+		generation = (generation + 1) % GENERATIONS;
+	}
+
+	public void clear() {
+		Arrays.fill(table, 0);
+	}
+
+	/**
+	 * @return the data stored for the key, or 0 if there is none. Read it with the static accessors.
+	 */
+	public long probe(long key) {
+		int bucket = bucketIndex(key);
+		for (int slot = bucket; slot < bucket + LONGS_PER_BUCKET; slot += LONGS_PER_ENTRY) {
+			long data = table[slot + 1];
+			if ((table[slot] ^ data) == key && data != 0)
+				return data;
+		}
+		return 0;
+	}
+
+	public void store(long key, int depth, int bound, int score, int bestMove) {
+		long data = score & 0xFFFF_FFFFL
+				| (long) (bestMove & 0xFFFF) << 32
+				| (long) Math.min(depth, 0xFF) << 48
+				| (long) bound << 56
+				| (long) generation << 58;
+
+		int bucket = bucketIndex(key);
+		int slot = bucket; // depth-preferred
+		long existing = table[slot + 1];
+		boolean sameKey = (table[slot] ^ existing) == key;
+		if (!sameKey && generationOf(existing) == generation && depth(existing) > depth)
+			slot += LONGS_PER_ENTRY; // keep the deeper result, and use the always-replace slot instead
+		else if (sameKey && bestMove == Move.NONE)
+			data |= (long) bestMove(existing) << 32; // keep the best move from an earlier search of this position
+
+		table[slot] = key ^ data;
+		table[slot + 1] = data;
+	}
+
+	private int bucketIndex(long key) {
+		return (int) (key & bucketMask) * LONGS_PER_BUCKET;
+	}
+
+	public static int score(long data) {
+		return (int) data;
+	}
+
+	public static int bestMove(long data) {
+		return (int) (data >>> 32) & 0xFFFF;
+	}
+
+	public static int depth(long data) {
+		return (int) (data >>> 48) & 0xFF;
+	}
+
+	public static int bound(long data) {
+		return (int) (data >>> 56) & 0x3;
+	}
+
+	private static int generationOf(long data) {
+		return (int) (data >>> 58);
+	}
+}
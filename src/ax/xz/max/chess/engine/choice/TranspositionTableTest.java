@@ -0,0 +1,42 @@
+package ax.xz.max.chess.engine.choice;
+
+import ax.xz.max.chess.Move;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TranspositionTableTest {
+	@Test
+	void testStoreAndProbe() {
+		var table = new TranspositionTable(1);
+		long key = 0x1234_5678_9ABC_DEF0L;
+		int move = Move.of(12, 28, Move.DOUBLE_PAWN_PUSH);
+
+		assertEquals(0, table.probe(key));
+		table.store(key, 5, TranspositionTable.LOWER_BOUND, -125, move);
+
+		long entry = table.probe(key);
+		assertEquals(5, TranspositionTable.depth(entry));
+		assertEquals(TranspositionTable.LOWER_BOUND, TranspositionTable.bound(entry));
+		assertEquals(-125, TranspositionTable.score(entry));
+		assertEquals(move, TranspositionTable.bestMove(entry));
+
+		assertEquals(0, table.probe(key ^ 1L << 40)); // same bucket, different key
+	}
+
+	@Test
+	void testReplacement() {
+		var table = new TranspositionTable(1);
+		long deep = 7;
+		long shallow = deep | 1L << 50; // same bucket
+
+		table.store(deep, 8, TranspositionTable.EXACT, 1, Move.NONE);
+		table.store(shallow, 2, TranspositionTable.EXACT, 2, Move.NONE);
+		assertNotEquals(0, table.probe(deep)); // kept in the depth-preferred slot
+		assertNotEquals(0, table.probe(shallow)); // stored in the always-replace slot
+
+		table.newSearch();
+		table.store(shallow | 1L << 51, 1, TranspositionTable.EXACT, 3, Move.NONE);
+		assertEquals(0, table.probe(deep)); // stale entries give way, even to shallower results
+	}
+}
@@ -1,8 +1,19 @@
 package ax.xz.max.chess.engine.evaluators;
 
 import ax.xz.max.chess.Board;
+import ax.xz.max.chess.SearchPosition;
 
 public interface BoardEvaluator {
+	/**
+	 * The magnitude of a checkmate in search, in centipawns: being mated in n plies scores -(MATE - n)
+	 */
+	int MATE = 1_000_000;
+
+	/**
+	 * The largest magnitude of a centipawn evaluation, below every mate score, so that search never takes an evaluation for a mate
+	 */
+	int MAX_EVALUATION = MATE - SearchPosition.MAX_PLY - 1;
+
 	/**
 	 * Finds a numerical estimate of the board's current position.
 	 * A positive evaluation indicates that white has a better position,
@@ -13,4 +24,20 @@ public interface BoardEvaluator {
 	 * @return the numerical evaluation of the current position
 	 */
 	double evaluate(Board board);
+
+	/**
+	 * Evaluates a position reached during search.
+	 * By default, this takes a snapshot of the position and evaluates it as a board.
+	 */
+	default double evaluate(SearchPosition position) {
+		return evaluate(new Board(position.toBoardState()));
+	}
+
+	/**
+	 * Evaluates a position reached during search in whole centipawns, positive when white is better, clamped to {@link #MAX_EVALUATION}.
+	 * By default, this rounds {@link #evaluate(SearchPosition)}; evaluators which can work in centipawns directly should override it.
+	 */
+	default int evaluateCentipawns(SearchPosition position) {
+		return Math.clamp(Math.round(evaluate(position) * 100), -MAX_EVALUATION, MAX_EVALUATION);
+	}
 }
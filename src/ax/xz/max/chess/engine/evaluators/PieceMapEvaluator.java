@@ -24,6 +24,101 @@ public class PieceMapEvaluator implements BoardEvaluator {
 
 	}
 
+	/**
+	 * Computes the same evaluation as {@link #evaluate(Board)} straight from the position's bitboards, without allocating.
+	 * The terms are summed in millipawns, which every weight is a whole number of.
+	 * Draws by repetition and the fifty-move rule are left to the search.
+	 */
+	@Override
+	public int evaluateCentipawns(SearchPosition position) {
+		var moves = SCRATCH_MOVES.get();
+		position.generateLegalMoves(moves);
+		if (moves.isEmpty()) {
+			if (!position.isInCheck()) return 0;
+			return position.currentTurn() == Player.WHITE ? -MAX_EVALUATION : MAX_EVALUATION;
+		}
+		int mobility = mobilityMillipawns(position, moves);
+		position.generateLegalMoves(position.currentTurn().opponent(), moves);
+		mobility -= mobilityMillipawns(position, moves);
+		if (position.currentTurn() == Player.BLACK) mobility = -mobility;
+
+		boolean isEndGame = isEndgame(position);
+		double millipawns = materialMillipawns(position, isEndGame)
+				+ mobility
+				+ (isEndGame ? endgameMillipawns(position) : 0)
+				- (pawnStructurePenalty(position, Player.WHITE) - pawnStructurePenalty(position, Player.BLACK));
+		return Math.clamp(Math.round(millipawns / 10), -MAX_EVALUATION, MAX_EVALUATION);
+	}
+
+	private static final ThreadLocal<MoveList> SCRATCH_MOVES = ThreadLocal.withInitial(MoveList::new);
+	private static final PieceType[] PIECE_TYPES = PieceType.values(); // values() copies the array on every call
+
+	private static double materialMillipawns(SearchPosition position, boolean isEndGame) {
+		int whiteMaterial = 0;
+		int blackMaterial = 0;
+		for (var type : PIECE_TYPES) {
+			if (type == PieceType.KING && isEndGame) continue;
+			var values = MILLIPAWNS[type.ordinal()];
+			for (long pieces = position.bitBoardFor(Player.WHITE, type); pieces != 0; pieces = Bitboards.withoutFirst(pieces))
+				whiteMaterial += values[Bitboards.firstSquare(pieces)];
+			for (long pieces = position.bitBoardFor(Player.BLACK, type); pieces != 0; pieces = Bitboards.withoutFirst(pieces))
+				blackMaterial += values[Bitboards.firstSquare(pieces) ^ 56]; // the black tables are the white ones upside down
+		}
+
+		double scaleFactor = 1 + Math.exp(-0.1 * (whiteMaterial + blackMaterial) / 1000);
+		return scaleFactor * (whiteMaterial - blackMaterial);
+	}
+
+	/** {@link #moveReward} of every move in the list, in millipawns */
+	private static int mobilityMillipawns(SearchPosition position, MoveList moves) {
+		int total = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			total += 4;
+			if (Move.flag(move) == Move.CASTLE) total += 5;
+			else if (Move.isPromotion(move)) total += 20;
+			total += switch (position.pieceAt(Move.from(move)).type()) {
+				case KNIGHT, BISHOP, ROOK -> 1;
+				default -> 0;
+			};
+		}
+		return total;
+	}
+
+	/** the doubled, blocked and isolated pawn penalties of one player, in millipawns */
+	private static int pawnStructurePenalty(SearchPosition position, Player player) {
+		long pawns = position.bitBoardFor(player, PieceType.PAWN);
+
+		int doubled = 0;
+		int isolated = 0;
+		for (int file = 0; file < 8; file++) {
+			int numPawns = Bitboards.count(pawns & Bitboards.fileMask(file));
+			if (numPawns > 1) doubled += numPawns - 1;
+			if (numPawns == 0) continue;
+			if (file > 0 && (pawns & Bitboards.fileMask(file - 1)) != 0) continue;
+			if (file < 7 && (pawns & Bitboards.fileMask(file + 1)) != 0) continue;
+			isolated += numPawns;
+		}
+		int blocked = Bitboards.count(Bitboards.forward(player, pawns) & position.occupancy());
+
+		return 200 * doubled + 100 * blocked + 500 * isolated;
+	}
+
+	private static boolean isEndgame(SearchPosition position) {
+		long pawnsAndKings = position.bitBoardFor(Player.WHITE, PieceType.PAWN) | position.bitBoardFor(Player.BLACK, PieceType.PAWN)
+				| position.bitBoardFor(Player.WHITE, PieceType.KING) | position.bitBoardFor(Player.BLACK, PieceType.KING);
+		return Bitboards.count(position.occupancy() & ~pawnsAndKings) < 6;
+	}
+
+	private static int endgameMillipawns(SearchPosition position) {
+		int total = 0;
+		for (long pawns = position.bitBoardFor(Player.WHITE, PieceType.PAWN); pawns != 0; pawns = Bitboards.withoutFirst(pawns))
+			total += 150 * Bitboards.rankOf(Bitboards.firstSquare(pawns));
+		for (long pawns = position.bitBoardFor(Player.BLACK, PieceType.PAWN); pawns != 0; pawns = Bitboards.withoutFirst(pawns))
+			total -= 150 * (7 - Bitboards.rankOf(Bitboards.firstSquare(pawns)));
+		return total;
+	}
+
 	/** should be added to the evaluation */
 	private static double materialReward(Board board) {
 		boolean isEndGame = isEndgame(board);
@@ -126,6 +221,26 @@ public class PieceMapEvaluator implements BoardEvaluator {
 
 	private static final List<List<Double>> blackKingValue = whiteKingValue.reversed();
 
+	/** the tables above in millipawns, indexed by [piece type][square], from white's side of the board */
+	private static final int[][] MILLIPAWNS = new int[PieceType.values().length][64];
+
+	static {
+		for (var type : PieceType.values()) {
+			var table = switch (type) {
+				case PAWN -> whitePawnValue;
+				case KNIGHT -> whiteKnightValue;
+				case BISHOP -> whiteBishopValue;
+				case ROOK -> whiteRookValue;
+				case QUEEN -> whiteQueenValue;
+				case KING -> whiteKingValue;
+			};
+			for (int rank = 0; rank < 8; rank++) {
+				for (int file = 0; file < 8; file++)
+					MILLIPAWNS[type.ordinal()][Bitboards.square(rank, file)] = (int) Math.round(table.get(rank).get(file) * 1000);
+			}
+		}
+	}
+
 	private static double valueOf(BoardCoordinate coordinate, Piece piece, boolean isEndGame) {
 		return switch (piece.owner()) {
 			case WHITE -> switch (piece.type()) {
@@ -0,0 +1,25 @@
+package ax.xz.max.chess.engine.evaluators;
+
+import ax.xz.max.chess.Board;
+import ax.xz.max.chess.SearchPosition;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PieceMapEvaluatorTest {
+	@Test
+	void testCentipawnsMatchBoardEvaluation() {
+		var evaluator = new PieceMapEvaluator();
+		for (var fen : new String[]{
+				"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+				"r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4", // white can castle
+				"r3k2r/1P3ppp/8/2p5/2Pp4/8/5PPP/R3K2R b KQkq - 0 1", // promotions, doubled and isolated pawns
+				"8/5pk1/6p1/8/2P5/1P6/P5K1/8 w - - 0 40", // endgame
+				"rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3", // white is mated
+		}) {
+			var board = Board.fromFEN(fen);
+			long expected = Math.clamp(Math.round(evaluator.evaluate(board) * 100), -BoardEvaluator.MAX_EVALUATION, BoardEvaluator.MAX_EVALUATION);
+			assertEquals(expected, evaluator.evaluateCentipawns(SearchPosition.of(board)), 1, fen); // rounded from different sums
+		}
+	}
+}
@@ -20,6 +20,16 @@ public record Promotion(
 
 	@Override
 	public BoardState apply(BoardState board) {
+		// capturing a rook on its starting square takes away the opponent's castling on that side
+		Player opponent = getPlayer().opponent();
+		if (board.hasCastlingRights(opponent)) {
+			if (to.file() == 0) {
+				board = board.revokeLongCastle(opponent);
+			} else if (to.file() == 7) {
+				board = board.revokeShortCastle(opponent);
+			}
+		}
+
 		return board
 				.placePiece(newPiece, to)
 				.removePiece(from)
@@ -19,6 +19,16 @@ public record RegularMove(Piece piece, BoardCoordinate from, BoardCoordinate to)
 			}
 		}
 
+		// capturing a rook on its starting square takes away the opponent's castling on that side
+		Player opponent = getPlayer().opponent();
+		if (board.hasCastlingRights(opponent) && to.rank() == opponent.homeRank()) {
+			if (to.file() == 0) {
+				board = board.revokeLongCastle(opponent);
+			} else if (to.file() == 7) {
+				board = board.revokeShortCastle(opponent);
+			}
+		}
+
 		boolean isCapture = board.pieceAt(to) != null;
 		boolean isPawnMove = piece.type() == PieceType.PAWN;
 
@@ -2,9 +2,7 @@ package ax.xz.max.chess.online;
 
 import ax.xz.max.chess.Board;
 import ax.xz.max.chess.Player;
-import ax.xz.max.chess.engine.choice.FasterAlphaBetaSearch;
-import ax.xz.max.chess.engine.choice.MovePicker;
-import ax.xz.max.chess.engine.evaluators.BoardEvaluator;
+import ax.xz.max.chess.engine.choice.GameEngine;
 import ax.xz.max.chess.engine.evaluators.PieceMapEvaluator;
 import ax.xz.max.chess.moves.PlayerMove;
 import chariot.api.BotAuth;
@@ -14,18 +12,21 @@ import java.time.Duration;
 import java.time.Instant;
 
 class GameSession {
+	private static final Duration MIN_TIME_BUDGET = Duration.ofMillis(50);
+
 	private final String gameId;
 	private final BotAuth bot;
 	private final Board startingBoard;
 	private final Player player;
+	private final GameEngine engine; // kept for the whole game, so that each search builds on the last
 	private volatile int previousMoves; // the amount of moves already present before starting the game
 
-
 	 GameSession(String gameId, BotAuth bot, Board startingBoard, Player player) {
 		this.gameId = gameId;
 		this.bot = bot;
 		this.startingBoard = startingBoard;
 		this.player = player;
+		this.engine = new GameEngine(new PieceMapEvaluator(), "Search " + gameId);
 	}
 
 	private static Player parseColor(Enums.Color color) {
@@ -44,7 +45,11 @@ class GameSession {
 	}
 
 	void playGame() {
-		bot.connectToGame(gameId).stream().forEach(this::handleGameEvent);
+		try {
+			bot.connectToGame(gameId).stream().forEach(this::handleGameEvent);
+		} finally {
+			engine.close();
+		}
 	}
 
 	private void handleGameEvent(GameStateEvent event) {
@@ -92,32 +97,41 @@ class GameSession {
 			for (String move : moveList)
 				board.makeMove(board.fromUCI(move));
 
+			var expectedReply = engine.expectedReply();
+			if (expectedReply != null && !moveList.isEmpty())
+				System.out.println(expectedReply.toUCI().equals(moveList.getLast()) ? "Opponent played the expected reply" : "Opponent did not play the expected " + expectedReply.toUCI());
+
 			Duration timeRemaining = switch (player) {
 				case WHITE -> state.wtime();
 				case BLACK -> state.btime();
 			};
+			Duration increment = switch (player) {
+				case WHITE -> state.winc();
+				case BLACK -> state.binc();
+			};
 
-			BoardEvaluator heuristic = new PieceMapEvaluator();
-			int searchDepth = searchDepthFor(timeRemaining);
-			System.out.println("Using search depth " + searchDepth);
-			MovePicker engine = new FasterAlphaBetaSearch(heuristic, searchDepth);
+			Duration budget = timeBudgetFor(timeRemaining, increment);
+			System.out.println("Using time budget " + budget.toMillis() + "ms");
 
 			Instant start = Instant.now();
-			var move = engine.chooseNextMove(board);
-			System.out.println("Move picked in " + Duration.between(start, Instant.now()).toMillis() + "ms: " + move.toUCI());
+			var move = engine.chooseNextMove(board, budget);
+			System.out.println("Move picked in " + Duration.between(start, Instant.now()).toMillis() + "ms: " + move.toUCI()
+					+ ", expecting " + engine.principalVariation().stream().map(PlayerMove::toUCI).toList());
 			sendMove(move);
 		} catch (Exception e) {
 			System.err.println("Error in game " + gameId);
 		}
 	}
 
-	private int searchDepthFor(Duration time) {
-		double minutesLeft = time.getSeconds() / 60.;
-		if (minutesLeft < 0.1) return 3;
-		if (minutesLeft < 1) return 4;
-		if (minutesLeft < 5) return 5;
-		if (minutesLeft < 20) return 6;
-		else return 7;
+	/**
+	 * @return the most time to spend on one move: a share of the remaining clock plus most of the increment,
+	 * never more than a fifth of the clock so that a long think can not flag us
+	 */
+	private static Duration timeBudgetFor(Duration timeRemaining, Duration increment) {
+		Duration budget = timeRemaining.dividedBy(30).plus(increment.multipliedBy(3).dividedBy(4));
+		Duration cap = timeRemaining.dividedBy(5);
+		if (budget.compareTo(cap) > 0) budget = cap;
+		return budget.compareTo(MIN_TIME_BUDGET) < 0 ? MIN_TIME_BUDGET : budget;
 	}
 
 	public void chat(String message) {